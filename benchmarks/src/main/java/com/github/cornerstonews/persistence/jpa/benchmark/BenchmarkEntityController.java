@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.SingularAttribute;
+
+import com.github.cornerstonews.persistence.jpa.controller.AbstractJpaController;
+
+public class BenchmarkEntityController extends AbstractJpaController<BenchmarkEntity> {
+
+    public BenchmarkEntityController(EntityManagerFactory emf) {
+        super(emf, BenchmarkEntity.class);
+    }
+
+    @Override
+    public Object getPrimaryKey(BenchmarkEntity entity) {
+        return entity.getId();
+    }
+
+    @Override
+    public Object convertToPrimaryKeyType(Object id) {
+        if (id == null || id instanceof Long) {
+            return id;
+        }
+        return Long.valueOf(id.toString());
+    }
+
+    @Override
+    protected SingularAttribute<BenchmarkEntity, ?> getValidOrDefaultOrderBy(String orderBy) {
+        if ("name".equals(orderBy)) {
+            return BenchmarkEntity_.name;
+        } else if ("category".equals(orderBy)) {
+            return BenchmarkEntity_.category;
+        } else if ("score".equals(orderBy)) {
+            return BenchmarkEntity_.score;
+        }
+        return BenchmarkEntity_.id;
+    }
+
+    @Override
+    protected List<Predicate> getSearchPredicates(BenchmarkEntity entity, CriteriaBuilder cb, Root<BenchmarkEntity> root) {
+        List<Predicate> predicates = new ArrayList<>();
+        if (entity.getCategory() != null) {
+            predicates.add(cb.equal(root.get(BenchmarkEntity_.category), entity.getCategory()));
+        }
+        if (entity.getName() != null) {
+            predicates.add(cb.like(cb.upper(root.get(BenchmarkEntity_.name)), getLikeString(entity.getName())));
+        }
+        return predicates;
+    }
+}
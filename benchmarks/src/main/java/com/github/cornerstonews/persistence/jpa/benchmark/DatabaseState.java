@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/*
+ * Fresh in-memory H2 database per trial, seeded with ROWS entities. Rows written by the benchmarks
+ * get ids above ROWS and are removed after every iteration so the table size stays stable.
+ */
+@State(Scope.Benchmark)
+public class DatabaseState {
+
+    public static final int ROWS = 10000;
+
+    public static final int CATEGORIES = 20;
+
+    private static final String DESCRIPTION = new String(new char[1024]).replace('\0', 'x');
+
+    public EntityManagerFactory emf;
+
+    public BenchmarkEntityController controller;
+
+    private final AtomicLong nextId = new AtomicLong(ROWS);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("javax.persistence.jdbc.url", "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        emf = Persistence.createEntityManagerFactory("benchmark", properties);
+        controller = new BenchmarkEntityController(emf);
+
+        List<BenchmarkEntity> entities = new ArrayList<>(ROWS);
+        for (long id = 1; id <= ROWS; id++) {
+            entities.add(newEntity(id));
+        }
+        controller.createAll(entities, 1000);
+    }
+
+    @TearDown(Level.Iteration)
+    public void removeWrittenRows() {
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.createQuery("DELETE FROM BenchmarkEntity e WHERE e.id > :id").setParameter("id", (long) ROWS).executeUpdate();
+            em.getTransaction().commit();
+        } finally {
+            em.close();
+        }
+        nextId.set(ROWS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        emf.close();
+    }
+
+    public BenchmarkEntity newEntity() {
+        return newEntity(nextId.incrementAndGet());
+    }
+
+    public static BenchmarkEntity newEntity(long id) {
+        return new BenchmarkEntity(id, "Name " + (id % 997), "category" + (id % CATEGORIES), (int) (id % 100), DESCRIPTION);
+    }
+}
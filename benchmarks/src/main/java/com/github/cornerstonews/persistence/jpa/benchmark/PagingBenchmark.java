@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.github.cornerstonews.persistence.jpa.controller.KeysetCursor;
+import com.github.cornerstonews.persistence.jpa.controller.KeysetPage;
+
+/*
+ * Offset paging at increasing depth with keyset paging at the same depth for comparison, with and
+ * without case insensitive ordering.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PagingBenchmark {
+
+    public static final int PAGE_SIZE = 50;
+
+    @Param({ "0", "1000", "9000" })
+    public int depth;
+
+    @Param({ "false", "true" })
+    public boolean orderByIgnoreCase;
+
+    private KeysetCursor cursorAtDepth;
+
+    @Setup(Level.Trial)
+    public void setUp(DatabaseState state) {
+        KeysetCursor cursor = null;
+        for (int position = 0; position < depth; position += PAGE_SIZE) {
+            cursor = state.controller.getAfter(cursor, PAGE_SIZE, "name", orderByIgnoreCase, false).getNextCursor();
+        }
+        cursorAtDepth = cursor;
+    }
+
+    @Benchmark
+    public List<BenchmarkEntity> getOffsetPage(DatabaseState state) {
+        return state.controller.get(depth, PAGE_SIZE, "name", orderByIgnoreCase, false);
+    }
+
+    @Benchmark
+    public KeysetPage<BenchmarkEntity> getKeysetPage(DatabaseState state) {
+        return state.controller.getAfter(cursorAtDepth, PAGE_SIZE, "name", orderByIgnoreCase, false);
+    }
+}
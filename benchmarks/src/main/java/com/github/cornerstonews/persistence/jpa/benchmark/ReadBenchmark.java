@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.benchmark;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * Primary key lookups, counts and predicate searches, the searches with and without case insensitive
+ * ordering. Paging at increasing depth is measured by PagingBenchmark.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ReadBenchmark {
+
+    public static final int PAGE_SIZE = 50;
+
+    private BenchmarkEntity searchEntity;
+
+    /*
+     * Only the searches take this state, so the benchmarks that do not order run once instead of once
+     * per value.
+     */
+    @State(Scope.Benchmark)
+    public static class Ordering {
+
+        @Param({ "false", "true" })
+        public boolean orderByIgnoreCase;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        searchEntity = new BenchmarkEntity();
+        searchEntity.setCategory("category7");
+        searchEntity.setName("name 1");
+    }
+
+    @Benchmark
+    public BenchmarkEntity findByPrimaryKey(DatabaseState state) {
+        return state.controller.findByPrimaryKey(ThreadLocalRandom.current().nextLong(1, DatabaseState.ROWS + 1));
+    }
+
+    @Benchmark
+    public Long getCount(DatabaseState state) {
+        return state.controller.getCount();
+    }
+
+    @Benchmark
+    public List<BenchmarkEntity> findByField(DatabaseState state, Ordering ordering) {
+        return state.controller.findBy(BenchmarkEntity_.category, "CATEGORY7", true, 0, PAGE_SIZE, "name", ordering.orderByIgnoreCase, false);
+    }
+
+    @Benchmark
+    public List<BenchmarkEntity> findBySearchEntity(DatabaseState state, Ordering ordering) {
+        return state.controller.findBy(searchEntity, 0, PAGE_SIZE, "name", ordering.orderByIgnoreCase, false);
+    }
+
+    @Benchmark
+    public Long findByCount(DatabaseState state) {
+        return state.controller.findByCount(searchEntity);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.benchmark;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.github.cornerstonews.persistence.jpa.controller.ReadOptions;
+
+/*
+ * The same reads with managed and with read-only queries, and the multi-row reads with the driver
+ * default and with a larger JDBC fetch size. Compare gc.alloc.rate.norm between the readOnly values to
+ * see the cost of the clones and change tracking state a managed read builds for every row. getCount
+ * is measured once as a baseline, neither read-only nor a fetch size changes a count.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReadOnlyBenchmark {
+
+    public static final int PAGE_SIZE = 50;
+
+    @State(Scope.Thread)
+    public static class ReadMode {
+
+        @Param({ "false", "true" })
+        public boolean readOnly;
+
+        private ReadOptions options;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            options = new ReadOptions(readOnly, 0, null);
+        }
+    }
+
+    /*
+     * The fetch size is not passed to em.find, so only the benchmarks reading many rows take this state.
+     */
+    @State(Scope.Thread)
+    public static class Fetching {
+
+        @Param({ "0", "500" })
+        public int fetchSize;
+
+        private ReadOptions options;
+
+        @Setup(Level.Trial)
+        public void setUp(ReadMode mode) {
+            options = new ReadOptions(mode.readOnly, fetchSize, null);
+        }
+    }
+
+    @Benchmark
+    public BenchmarkEntity findByPrimaryKey(DatabaseState state, ReadMode mode) {
+        long id = ThreadLocalRandom.current().nextLong(1, DatabaseState.ROWS + 1);
+        return state.controller.withReadOptions(mode.options, () -> state.controller.findByPrimaryKey(id));
+    }
+
+    @Benchmark
+    public List<BenchmarkEntity> getPage(DatabaseState state, Fetching fetching) {
+        return state.controller.withReadOptions(fetching.options, () -> state.controller.get(0, PAGE_SIZE, "name", false, false));
+    }
+
+    @Benchmark
+    public List<BenchmarkEntity> findByCategory(DatabaseState state, Fetching fetching) {
+        return state.controller.withReadOptions(fetching.options, () -> state.controller.findBy(BenchmarkEntity_.category, "category7"));
+    }
+
+    @Benchmark
+    public Long getCount(DatabaseState state) {
+        return state.controller.getCount();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import com.github.cornerstonews.persistence.jpa.controller.BatchResult;
+
+/*
+ * Single entity writes through performTransaction against bulk writes of BULK_SIZE entities.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class WriteBenchmark {
+
+    public static final int BULK_SIZE = 1000;
+
+    /*
+     * Only createAll takes this state, so the single entity writes run once instead of once per value.
+     */
+    @State(Scope.Benchmark)
+    public static class Batching {
+
+        @Param({ "100", "1000" })
+        public int batchSize;
+    }
+
+    @Benchmark
+    public BenchmarkEntity create(DatabaseState state) {
+        return state.controller.create(state.newEntity());
+    }
+
+    @Benchmark
+    public BenchmarkEntity createThenUpdate(DatabaseState state) {
+        BenchmarkEntity entity = state.controller.create(state.newEntity());
+        entity.setScore(entity.getScore() + 1);
+        return state.controller.update(entity);
+    }
+
+    @Benchmark
+    public List<BatchResult<BenchmarkEntity>> createAll(DatabaseState state, Batching batching) {
+        List<BenchmarkEntity> entities = new ArrayList<>(BULK_SIZE);
+        for (int i = 0; i < BULK_SIZE; i++) {
+            entities.add(state.newEntity());
+        }
+        return state.controller.createAll(entities, batching.batchSize);
+    }
+}
@@ -16,29 +16,117 @@
  */
 package com.github.cornerstonews.persistence.jpa.controller;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.Query;
+import javax.persistence.Tuple;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaDelete;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.CriteriaUpdate;
 import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import javax.persistence.metamodel.EntityType;
 import javax.persistence.metamodel.SingularAttribute;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.config.ResultSetConcurrency;
+import org.eclipse.persistence.config.ResultSetType;
+import org.eclipse.persistence.queries.ScrollableCursor;
 
 public abstract class AbstractJpaController<T> implements JpaController<T> {
 
     private static final Logger log = LogManager.getLogger(AbstractJpaController.class);
 
+    private static final String FIELD_VALUE_PARAMETER = "value";
+
+    private static final String PRIMARY_KEYS_PARAMETER = "primaryKeys";
+
     protected EntityManagerFactory emf = null;
 
     private Class<T> classType;
 
+    private int batchSize = 500;
+
+    private int flushInterval = 100;
+
+    private int streamFetchSize = 500;
+
+    private int inListChunkSize = 1000;
+
+    private volatile PreparedQueryCache preparedQueryCache = new PreparedQueryCache(64);
+
+    private volatile EntityCache<T> entityCache = null;
+
+    private final AtomicLong cacheGeneration = new AtomicLong();
+
+    private volatile CountCache countCache = null;
+
+    private volatile Executor countExecutor = null;
+
+    private volatile SingleFlight singleFlight = null;
+
+    private volatile boolean batchWritingChecked = false;
+
+    private volatile SingularAttribute<? super T, ?> idAttribute;
+
+    private volatile MetricsSink metricsSink = null;
+
+    private volatile long slowQueryThresholdNanos = 0;
+
+    private volatile ReadOptions readOptions = ReadOptions.DEFAULT;
+
+    private final ThreadLocal<ReadOptions> callReadOptions = new ThreadLocal<>();
+
+    private final ThreadLocal<FetchPlan> callFetchPlan = new ThreadLocal<>();
+
+    private volatile ReadReplicas readReplicas = null;
+
+    private final ThreadLocal<Boolean> fillingCache = new ThreadLocal<>();
+
     protected AbstractJpaController(EntityManagerFactory emf, Class<T> classType) {
         this.emf = emf;
         this.classType = classType;
@@ -48,10 +136,347 @@ public abstract class AbstractJpaController<T> implements JpaController<T> {
         return emf.createEntityManager();
     }
 
+    /*
+     * EntityManager for a read routed to the given replica
+     */
+    protected EntityManager getReadEntityManager(EntityManagerFactory replica) {
+        return replica.createEntityManager();
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /*
+     * number of entities written per transaction by createAll/updateAll/deleteAll
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be greater than 0.");
+        }
+        this.batchSize = batchSize;
+    }
+
+    public int getFlushInterval() {
+        return flushInterval;
+    }
+
+    /*
+     * number of entities after which a bulk transaction flushes and clears the persistence context
+     */
+    public void setFlushInterval(int flushInterval) {
+        if (flushInterval < 1) {
+            throw new IllegalArgumentException("Flush interval must be greater than 0.");
+        }
+        this.flushInterval = flushInterval;
+    }
+
+    public int getStreamFetchSize() {
+        return streamFetchSize;
+    }
+
+    /*
+     * JDBC fetch size of the stream/forEach cursors, the persistence context is cleared after as many rows
+     */
+    public void setStreamFetchSize(int streamFetchSize) {
+        if (streamFetchSize < 1) {
+            throw new IllegalArgumentException("Stream fetch size must be greater than 0.");
+        }
+        this.streamFetchSize = streamFetchSize;
+    }
+
+    public int getInListChunkSize() {
+        return inListChunkSize;
+    }
+
+    /*
+     * maximum number of ids bound to one IN list by findByPrimaryKeys, keep it below the database's parameter limit
+     */
+    public void setInListChunkSize(int inListChunkSize) {
+        if (inListChunkSize < 1) {
+            throw new IllegalArgumentException("IN list chunk size must be greater than 0.");
+        }
+        this.inListChunkSize = inListChunkSize;
+    }
+
+    public EntityCache<T> getEntityCache() {
+        return entityCache;
+    }
+
+    /*
+     * read-through cache for findByPrimaryKey and findByPrimaryKeys, null disables caching, see LruEntityCache
+     * for copying versus sharing cached entities
+     */
+    public void setEntityCache(EntityCache<T> entityCache) {
+        this.entityCache = entityCache;
+        this.cacheGeneration.incrementAndGet();
+    }
+
+    public CountCache getCountCache() {
+        return countCache;
+    }
+
+    /*
+     * Short lived cache for getCount, findByCount and the totals of getPage/findPage, null disables it.
+     * Counts of search entities are only cached when getSearchKey is overridden. It may be shared by
+     * controllers, keys are scoped to the entity and persistence unit.
+     */
+    public void setCountCache(CountCache countCache) {
+        this.countCache = countCache;
+        this.cacheGeneration.incrementAndGet();
+    }
+
+    public Executor getCountExecutor() {
+        return countExecutor;
+    }
+
+    /*
+     * executor the totals of getPage/findPage are counted on concurrently with the page, null counts on the calling thread
+     */
+    public void setCountExecutor(Executor countExecutor) {
+        this.countExecutor = countExecutor;
+    }
+
+    public SingleFlight getSingleFlight() {
+        return singleFlight;
+    }
+
+    /*
+     * coalesces identical concurrent findByPrimaryKey and findBy(field, value, ...) reads, null disables it
+     */
+    public void setSingleFlight(SingleFlight singleFlight) {
+        this.singleFlight = singleFlight;
+    }
+
+    public ReadReplicas getReadReplicas() {
+        return readReplicas;
+    }
+
+    /*
+     * Replicas the reads of this controller are routed to, null reads from the primary. Writes, reads
+     * inside a session and reads of a thread pinned by the read-your-writes window use the primary.
+     * So do reads whose result fills the entity cache or count cache: a lagging replica could return
+     * a row older than the last write, and the cache would keep it until it was evicted.
+     */
+    public void setReadReplicas(ReadReplicas readReplicas) {
+        this.readReplicas = readReplicas;
+    }
+
+    private boolean isPinnedToPrimary() {
+        ReadReplicas replicas = this.readReplicas;
+        return currentUnitOfWork() != null || (replicas != null && replicas.isPinned());
+    }
+
+    /*
+     * runs reads whose results go into the entity or count cache on the primary
+     */
+    private <R> R fillingCache(Supplier<R> read) {
+        if (this.readReplicas == null || this.fillingCache.get() != null) {
+            return read.get();
+        }
+        this.fillingCache.set(Boolean.TRUE);
+        try {
+            return read.get();
+        } finally {
+            this.fillingCache.remove();
+        }
+    }
+
+    public ReadOptions getReadOptions() {
+        return readOptions;
+    }
+
+    /*
+     * hints for every read of this controller, see ReadOptions
+     */
+    public void setReadOptions(ReadOptions readOptions) {
+        this.readOptions = readOptions == null ? ReadOptions.DEFAULT : readOptions;
+    }
+
+    /*
+     * Runs the work with the given read options in place of the controller's for reads of this controller
+     * on the current thread, for example withReadOptions(ReadOptions.READ_ONLY, () -> findBy(...)).
+     */
+    public <R> R withReadOptions(ReadOptions readOptions, Supplier<R> work) {
+        ReadOptions previous = this.callReadOptions.get();
+        this.callReadOptions.set(readOptions == null ? ReadOptions.DEFAULT : readOptions);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                this.callReadOptions.remove();
+            } else {
+                this.callReadOptions.set(previous);
+            }
+        }
+    }
+
+    private ReadOptions currentReadOptions() {
+        ReadOptions options = this.callReadOptions.get();
+        return options == null ? this.readOptions : options;
+    }
+
+    /*
+     * Runs the work with the fetch plan applied to the entity queries of this controller on the current
+     * thread, the explicit FetchPlan overloads of get/findBy/findByPrimaryKey(s) are shortcuts for it.
+     */
+    public <R> R withFetchPlan(FetchPlan fetchPlan, Supplier<R> work) {
+        FetchPlan previous = this.callFetchPlan.get();
+        if (fetchPlan == null) {
+            this.callFetchPlan.remove();
+        } else {
+            this.callFetchPlan.set(fetchPlan);
+        }
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                this.callFetchPlan.remove();
+            } else {
+                this.callFetchPlan.set(previous);
+            }
+        }
+    }
+
+    /*
+     * read options and fetch plan of the current call, the fetch plan only for queries returning entities
+     */
+    private <Q extends Query> Q applyReadHints(Q q, boolean entities) {
+        ReadOptions options = currentReadOptions();
+        if (!options.isDefault()) {
+            options.apply(q, entities, currentUnitOfWork() != null);
+        }
+        FetchPlan fetchPlan = this.callFetchPlan.get();
+        if (entities && fetchPlan != null) {
+            fetchPlan.apply(q, this.classType);
+        }
+        return q;
+    }
+
+    /*
+     * Runs the read once for concurrent callers with the same key. Reads of a session or of a thread
+     * pinned to the primary after a write are never shared, they must see what the caller wrote.
+     */
+    private <R> R coalesced(Object key, Supplier<R> read) {
+        SingleFlight flight = this.singleFlight;
+        if (flight == null || isPinnedToPrimary()) {
+            return read.get();
+        }
+        return flight.execute(sharedKey(Arrays.asList(key, currentReadOptions(), this.callFetchPlan.get())), read, this::detachedCopy);
+    }
+
+    /*
+     * keys of caches and flights that can be shared by controllers, scoped to the entity and persistence unit
+     */
+    private Object sharedKey(Object key) {
+        return Arrays.asList(this.classType.getName(), this.emf, key);
+    }
+
+    /*
+     * Copies for the callers that waited for another caller's read: the leader's entities read again
+     * with one IN query per inListChunkSize entities, through findByPrimaryKeys so the waiter's replica,
+     * read options and fetch plan apply.
+     */
+    @SuppressWarnings("unchecked")
+    private <R> R detachedCopy(R entityOrEntities) {
+        if (!(entityOrEntities instanceof List)) {
+            Object primaryKey = convertToPrimaryKeyType(getPrimaryKey((T) entityOrEntities));
+            return (R) findByPrimaryKeys(Collections.singletonList(primaryKey)).get(primaryKey);
+        }
+        List<Object> primaryKeys = new ArrayList<>();
+        for (T entity : (List<T>) entityOrEntities) {
+            primaryKeys.add(convertToPrimaryKeyType(getPrimaryKey(entity)));
+        }
+        Map<Object, T> found = findByPrimaryKeys(primaryKeys);
+        List<T> copies = new ArrayList<>(primaryKeys.size());
+        for (Object primaryKey : primaryKeys) {
+            T copy = found.get(primaryKey);
+            if (copy != null) {
+                copies.add(copy);
+            }
+        }
+        return (R) copies;
+    }
+
+    private List<T> loaded(EntityManager em, List<T> entities) {
+        FetchPlan fetchPlan = this.callFetchPlan.get();
+        if (fetchPlan != null) {
+            fetchPlan.load(em, this.classType, entities);
+        }
+        return entities;
+    }
+
+    private T find(EntityManager em, Object primaryKey) {
+        ReadOptions options = currentReadOptions();
+        if (options.isDefault()) {
+            return em.find(this.classType, primaryKey);
+        }
+        return em.find(this.classType, primaryKey, options.toProperties(currentUnitOfWork() != null));
+    }
+
+    /*
+     * Runs the work with one EntityManager bound to the current thread. Every controller call on the same
+     * EntityManagerFactory inside it, on this or any other controller, reuses that EntityManager and its
+     * persistence context instead of opening its own, and it is closed once the outermost session ends.
+     * Entity and count caches are bypassed inside a session so reads see its own changes. Calls made on
+     * other threads, for example through AsyncJpaController, do not take part in the session.
+     */
+    public <R> R inSession(Supplier<R> work) {
+        return UnitOfWork.run(this.emf, this::getEntityManager, false, work);
+    }
+
+    /*
+     * Like inSession, with one transaction around the work that is committed when it returns and rolled
+     * back when it throws. create/update/delete and the bulk writes join it instead of committing on
+     * their own, so a failed bulk write throws rather than reporting a failed chunk. Nested calls join
+     * the outer transaction.
+     */
+    public <R> R inTransaction(Supplier<R> work) {
+        return UnitOfWork.run(this.emf, this::getEntityManager, true, work);
+    }
+
+    private UnitOfWork currentUnitOfWork() {
+        return UnitOfWork.current(this.emf);
+    }
+
+    public MetricsSink getMetricsSink() {
+        return metricsSink;
+    }
+
+    /*
+     * Receives the measurements of every operation, for example an InMemoryMetricsSink. Null, the default,
+     * disables metrics so operations do not build measurements unless the slow query log is on.
+     */
+    public void setMetricsSink(MetricsSink metricsSink) {
+        this.metricsSink = metricsSink;
+    }
+
+    public long getSlowQueryThreshold(TimeUnit unit) {
+        return unit.convert(slowQueryThresholdNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /*
+     * operations taking at least this long are logged as warnings with their shape, 0 disables the slow query log
+     */
+    public void setSlowQueryThreshold(long threshold, TimeUnit unit) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Slow query threshold must not be negative.");
+        }
+        this.slowQueryThresholdNanos = unit.toNanos(threshold);
+    }
+
     protected abstract SingularAttribute<T, ?> getValidOrDefaultOrderBy(String orderBy);
 
     protected abstract List<Predicate> getSearchPredicates(T entity, CriteriaBuilder cb, Root<T> root);
 
+    public List<T> getAll(FetchPlan fetchPlan) {
+        return withFetchPlan(fetchPlan, () -> getAll());
+    }
+
+    public List<T> get(int startPosition, int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc, FetchPlan fetchPlan) {
+        return withFetchPlan(fetchPlan, () -> get(startPosition, maxResults, orderBy, orderByIgnoreCase, desc));
+    }
+
     public List<T> getAll() {
         return get(true, -1, -1, null, true, false);
     }
@@ -69,65 +494,54 @@ public abstract class AbstractJpaController<T> implements JpaController<T> {
     }
 
     private List<T> get(boolean all, int startPosition, int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc) {
-        EntityManager em = null;
-        try {
-            em = getEntityManager();
-            CriteriaBuilder cb = em.getCriteriaBuilder();
-            CriteriaQuery<T> cq = cb.createQuery(this.classType);
-            Root<T> root = cq.from(this.classType);
-            cq.select(root);
-
+        return read(startOperation("get").orderBy(orderBy, orderByIgnoreCase, desc).paging(all, startPosition, maxResults), (EntityManager em) -> {
             SingularAttribute<T, ?> orderByAttribute = getValidOrDefaultOrderBy(orderBy);
-            Expression<String> orderByExpression = root.get(orderByAttribute.getName());
-            if (orderByIgnoreCase && CharSequence.class.isAssignableFrom(orderByAttribute.getJavaType())) {
-                orderByExpression = cb.upper(root.get(orderByAttribute.getName()));
-            }
+            String shape = queryShape("get", null, false, orderByAttribute, orderByIgnoreCase, desc);
+            TypedQuery<T> q = createPreparedQuery(em, shape, this.classType, (CriteriaBuilder cb) -> {
+                CriteriaQuery<T> cq = cb.createQuery(this.classType);
+                Root<T> root = cq.from(this.classType);
+                cq.select(root);
 
-            if (desc) {
-                cq.orderBy(cb.desc(orderByExpression));
-            } else {
-                cq.orderBy(cb.asc(orderByExpression));
-            }
-            TypedQuery<T> q = em.createQuery(cq);
+                Expression<String> orderByExpression = root.get(orderByAttribute.getName());
+                if (orderByIgnoreCase && CharSequence.class.isAssignableFrom(orderByAttribute.getJavaType())) {
+                    orderByExpression = cb.upper(root.get(orderByAttribute.getName()));
+                }
+
+                if (desc) {
+                    cq.orderBy(cb.desc(orderByExpression));
+                } else {
+                    cq.orderBy(cb.asc(orderByExpression));
+                }
+                return cq;
+            });
             if (!all) {
                 q.setFirstResult(startPosition);
                 q.setMaxResults(maxResults);
             }
-            return q.getResultList();
-        } finally {
-            if (em != null /* && em.isOpen() */) {
-                em.close();
-            }
-        }
+            return loaded(em, q.getResultList());
+        });
     }
 
     public Long getCount() {
-        EntityManager em = null;
-        try {
-            em = getEntityManager();
-            CriteriaBuilder cb = em.getCriteriaBuilder();
-            CriteriaQuery<Long> cq = cb.createQuery(Long.class);
-            Root<T> query = cq.from(this.classType);
-            cq.select(cb.count(query));
-            TypedQuery<Long> q = em.createQuery(cq);
+        return cachedCount(CountMode.CACHED, Collections.singletonList("getCount"), () -> countAll());
+    }
+
+    private Long countAll() {
+        return read(startOperation("getCount"), (EntityManager em) -> {
+            TypedQuery<Long> q = createPreparedQuery(em, queryShape("getCount", null, false, null, false, false), Long.class, (CriteriaBuilder cb) -> {
+                CriteriaQuery<Long> cq = cb.createQuery(Long.class);
+                Root<T> query = cq.from(this.classType);
+                cq.select(cb.count(query));
+                return cq;
+            });
             return q.getSingleResult();
-        } finally {
-            if (em != null /* && em.isOpen() */) {
-                em.close();
-            }
-        }
+        });
     }
 
     public T getReference(Object id) {
-        EntityManager em = null;
-        try {
-            em = getEntityManager();
+        return read(startOperation("getReference"), (EntityManager em) -> {
             return em.getReference(this.classType, convertToPrimaryKeyType(id));
-        } finally {
-            if (em != null /* && em.isOpen() */) {
-                em.close();
-            }
-        }
+        });
     }
 
     public T find(T entity) {
@@ -135,16 +549,122 @@ public abstract class AbstractJpaController<T> implements JpaController<T> {
         return findByPrimaryKey(id);
     }
 
+    public T findByPrimaryKey(Object id, FetchPlan fetchPlan) {
+        return withFetchPlan(fetchPlan, () -> findByPrimaryKey(id));
+    }
+
+    /*
+     * With a fetch plan the entity is loaded by the findByPrimaryKeys query, which unlike find carries
+     * the plan's hints and does not answer from the persistence context without loading associations.
+     */
     public T findByPrimaryKey(Object id) {
-        EntityManager em = null;
-        try {
-            em = getEntityManager();
-            return em.find(this.classType, convertToPrimaryKeyType(id));
-        } finally {
-            if (em != null /* && em.isOpen() */) {
-                em.close();
+        Object primaryKey = convertToPrimaryKeyType(id);
+        if (this.callFetchPlan.get() != null) {
+            return findByPrimaryKeys(Collections.singletonList(primaryKey)).get(primaryKey);
+        }
+        EntityCache<T> cache = currentUnitOfWork() == null ? this.entityCache : null;
+        long generation = this.cacheGeneration.get();
+        if (cache != null) {
+            T cached = cache.get(primaryKey);
+            if (cached != null) {
+                Operation operation = startOperation("findByPrimaryKey");
+                operation.result(cached);
+                operation.finish();
+                return cached;
+            }
+        }
+        Supplier<T> load = () -> read(startOperation("findByPrimaryKey"), (EntityManager em) -> {
+            T entity = find(em, primaryKey);
+            cacheLoaded(cache, generation, primaryKey, entity);
+            return entity;
+        });
+        return coalesced(Arrays.asList("findByPrimaryKey", primaryKey), cache == null ? load : () -> fillingCache(load));
+    }
+
+    /*
+     * Loads all entities for the given ids with one IN query per inListChunkSize ids, keyed by the
+     * converted primary key in the order the ids were given. Ids without an entity are absent.
+     */
+    public Map<Object, T> findByPrimaryKeys(Collection<?> ids, FetchPlan fetchPlan) {
+        return withFetchPlan(fetchPlan, () -> findByPrimaryKeys(ids));
+    }
+
+    public Map<Object, T> findByPrimaryKeys(Collection<?> ids) {
+        Map<Object, T> results = new LinkedHashMap<>();
+        if (ids == null || ids.isEmpty()) {
+            return results;
+        }
+        Set<Object> primaryKeys = new LinkedHashSet<>();
+        for (Object id : ids) {
+            primaryKeys.add(convertToPrimaryKeyType(id));
+        }
+
+        EntityCache<T> cache = currentUnitOfWork() == null && this.callFetchPlan.get() == null ? this.entityCache : null;
+        long generation = this.cacheGeneration.get();
+        Map<Object, T> found = new HashMap<>();
+        if (cache != null) {
+            for (Object primaryKey : primaryKeys) {
+                T cached = cache.get(primaryKey);
+                if (cached != null) {
+                    found.put(primaryKey, cached);
+                }
             }
         }
+        Set<Object> missing = new LinkedHashSet<>(primaryKeys);
+        missing.removeAll(found.keySet());
+        if (missing.isEmpty()) {
+            for (Object primaryKey : primaryKeys) {
+                results.put(primaryKey, found.get(primaryKey));
+            }
+            Operation operation = startOperation("findByPrimaryKeys");
+            operation.result(results);
+            operation.finish();
+            return results;
+        }
+
+        Supplier<Map<Object, T>> load = () -> read(startOperation("findByPrimaryKeys"), (EntityManager em) -> {
+            SingularAttribute<? super T, ?> idAttribute = getIdAttribute(em);
+            TypedQuery<T> q = createPreparedQuery(em, queryShape("findByPrimaryKeys", null, false, null, false, false), this.classType, (CriteriaBuilder cb) -> {
+                CriteriaQuery<T> cq = cb.createQuery(this.classType);
+                Root<T> root = cq.from(this.classType);
+                cq.select(root);
+                cq.where(root.get(idAttribute.getName()).in(cb.parameter(Collection.class, PRIMARY_KEYS_PARAMETER)));
+                return cq;
+            });
+
+            List<Object> chunk = new ArrayList<>(Math.min(this.inListChunkSize, missing.size()));
+            int index = 0;
+            for (Object primaryKey : missing) {
+                chunk.add(primaryKey);
+                index++;
+                if (chunk.size() == this.inListChunkSize || index == missing.size()) {
+                    q.setParameter(PRIMARY_KEYS_PARAMETER, chunk);
+                    for (T entity : loaded(em, q.getResultList())) {
+                        Object entityKey = getPrimaryKey(entity);
+                        found.put(entityKey, entity);
+                        cacheLoaded(cache, generation, entityKey, entity);
+                    }
+                    chunk = new ArrayList<>(Math.min(this.inListChunkSize, missing.size() - index));
+                }
+            }
+            for (Object primaryKey : primaryKeys) {
+                T entity = found.get(primaryKey);
+                if (entity != null) {
+                    results.put(primaryKey, entity);
+                }
+            }
+            return results;
+        });
+        return cache == null ? load.get() : fillingCache(load);
+    }
+
+    public List<T> findBy(SingularAttribute<T, ?> field, Object value, FetchPlan fetchPlan) {
+        return withFetchPlan(fetchPlan, () -> findBy(field, value));
+    }
+
+    public List<T> findBy(SingularAttribute<T, ?> field, Object value, boolean ignoreCase, int firstResult, int maxResults, String orderBy, boolean orderByIgnoreCase,
+            boolean desc, FetchPlan fetchPlan) {
+        return withFetchPlan(fetchPlan, () -> findBy(field, value, ignoreCase, firstResult, maxResults, orderBy, orderByIgnoreCase, desc));
     }
 
     public List<T> findBy(SingularAttribute<T, ?> field, Object value) {
@@ -196,59 +716,70 @@ public abstract class AbstractJpaController<T> implements JpaController<T> {
     }
     
     private List<T> findBy(SingularAttribute<T, ?> field, Object value, boolean ignoreCase, boolean all, int firstResult, int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc) {
-        EntityManager em = null;
-        try {
-            em = getEntityManager();
-            CriteriaBuilder cb = em.getCriteriaBuilder();
-            CriteriaQuery<T> cq = cb.createQuery(this.classType);
-            Root<T> root = cq.from(this.classType);
-            cq.select(root);
-            if(ignoreCase && CharSequence.class.isAssignableFrom(field.getJavaType())) {
-                cq.where(cb.equal(cb.upper(root.get(field.getName())), value.toString().toUpperCase()));
-            } else {
-                cq.where(cb.equal(root.get(field), value));
-            }
+        boolean upperValue = ignoreCase && value != null && CharSequence.class.isAssignableFrom(field.getJavaType());
+        SingularAttribute<T, ?> orderByAttribute = getValidOrDefaultOrderBy(orderBy);
+        Object key = Arrays.asList("findBy", field.getName(), upperValue, upperValue ? value.toString().toUpperCase() : value, all ? -1 : firstResult, all ? -1 : maxResults,
+                orderByAttribute.getName(), orderByIgnoreCase, desc);
+        return coalesced(key, () -> read(startOperation("findBy").field(field, ignoreCase).orderBy(orderBy, orderByIgnoreCase, desc).paging(all, firstResult, maxResults), (EntityManager em) -> {
+            String shape = queryShape(value == null ? "findByNull" : "findBy", field, upperValue, orderByAttribute, orderByIgnoreCase, desc);
+            TypedQuery<T> q = createPreparedQuery(em, shape, this.classType, (CriteriaBuilder cb) -> {
+                CriteriaQuery<T> cq = cb.createQuery(this.classType);
+                Root<T> root = cq.from(this.classType);
+                cq.select(root);
+                cq.where(fieldPredicate(cb, root, field, value == null, upperValue));
 
-            SingularAttribute<T, ?> orderByAttribute = getValidOrDefaultOrderBy(orderBy);
-            Expression<String> orderByExpression = root.get(orderByAttribute.getName());
-            if (orderByIgnoreCase && CharSequence.class.isAssignableFrom(orderByAttribute.getJavaType())) {
-                orderByExpression = cb.upper(root.get(orderByAttribute.getName()));
-            }
+                Expression<String> orderByExpression = root.get(orderByAttribute.getName());
+                if (orderByIgnoreCase && CharSequence.class.isAssignableFrom(orderByAttribute.getJavaType())) {
+                    orderByExpression = cb.upper(root.get(orderByAttribute.getName()));
+                }
 
-            if (desc) {
-                cq.orderBy(cb.desc(orderByExpression));
-            } else {
-                cq.orderBy(cb.asc(orderByExpression));
-            }
-            TypedQuery<T> q = em.createQuery(cq);
+                if (desc) {
+                    cq.orderBy(cb.desc(orderByExpression));
+                } else {
+                    cq.orderBy(cb.asc(orderByExpression));
+                }
+                return cq;
+            });
+            bindFieldValue(q, value, upperValue);
             if (!all) {
                 q.setFirstResult(firstResult);
                 q.setMaxResults(maxResults);
             }
-            return q.getResultList();
-        } finally {
-            if (em != null /* && em.isOpen() */) {
-                em.close();
-            }
-        }
+            return loaded(em, q.getResultList());
+        }));
     }
 
     public Long findByCount(SingularAttribute<T, ?> field, Object value) {
-        EntityManager em = null;
-        try {
-            em = getEntityManager();
-            CriteriaBuilder cb = em.getCriteriaBuilder();
-            CriteriaQuery<Long> cq = cb.createQuery(Long.class);
-            Root<T> query = cq.from(this.classType);
-            cq.select(cb.count(query));
-            cq.where(cb.equal(query.get(field), value));
-            TypedQuery<Long> q = em.createQuery(cq);
+        return findByCount(field, value, false, CountMode.CACHED);
+    }
+
+    private Long findByCount(SingularAttribute<T, ?> field, Object value, boolean ignoreCase, CountMode countMode) {
+        boolean upperValue = ignoreCase && value != null && CharSequence.class.isAssignableFrom(field.getJavaType());
+        Object key = Arrays.asList("findByCount", field.getName(), upperValue, upperValue ? value.toString().toUpperCase() : value);
+        return cachedCount(countMode, key, () -> countBy(field, value, upperValue));
+    }
+
+    private Long countBy(SingularAttribute<T, ?> field, Object value, boolean upperValue) {
+        return read(startOperation("findByCount").field(field, upperValue), (EntityManager em) -> {
+            String shape = queryShape(value == null ? "findByCountNull" : "findByCount", field, upperValue, null, false, false);
+            TypedQuery<Long> q = createPreparedQuery(em, shape, Long.class, (CriteriaBuilder cb) -> {
+                CriteriaQuery<Long> cq = cb.createQuery(Long.class);
+                Root<T> query = cq.from(this.classType);
+                cq.select(cb.count(query));
+                cq.where(fieldPredicate(cb, query, field, value == null, upperValue));
+                return cq;
+            });
+            bindFieldValue(q, value, upperValue);
             return q.getSingleResult();
-        } finally {
-            if (em != null /* && em.isOpen() */) {
-                em.close();
-            }
-        }
+        });
+    }
+
+    public List<T> findBy(T searchEntity, FetchPlan fetchPlan) {
+        return withFetchPlan(fetchPlan, () -> findBy(searchEntity));
+    }
+
+    public List<T> findBy(T searchEntity, int firstResult, int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc, FetchPlan fetchPlan) {
+        return withFetchPlan(fetchPlan, () -> findBy(searchEntity, firstResult, maxResults, orderBy, orderByIgnoreCase, desc));
     }
 
     public List<T> findBy(T searchEntity) {
@@ -284,9 +815,8 @@ public abstract class AbstractJpaController<T> implements JpaController<T> {
     }
 
     private List<T> findBy(T searchEntity, PredicatesProvider<T> predicateProvider, boolean all, int firstResult, int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc) {
-        EntityManager em = null;
-        try {
-            em = getEntityManager();
+        Operation operation = startOperation("findBySearch").orderBy(orderBy, orderByIgnoreCase, desc).paging(all, firstResult, maxResults);
+        return read(operation, (EntityManager em) -> {
             CriteriaBuilder cb = em.getCriteriaBuilder();
             CriteriaQuery<T> cq = cb.createQuery(this.classType);
             Root<T> root = cq.from(this.classType);
@@ -295,6 +825,7 @@ public abstract class AbstractJpaController<T> implements JpaController<T> {
             cq.where(predicates.toArray(new Predicate[predicates.size()]));
 
             Expression<String> orderByExpression = predicateProvider.getOrderBy(orderBy, cb, cq, root);
+            operation.orderedBy(orderByExpression);
             if (orderByIgnoreCase && CharSequence.class.isAssignableFrom(orderByExpression.getJavaType())) {
                 orderByExpression = cb.upper(orderByExpression);
             }
@@ -304,17 +835,13 @@ public abstract class AbstractJpaController<T> implements JpaController<T> {
             } else {
                 cq.orderBy(cb.asc(orderByExpression));
             }
-            TypedQuery<T> q = em.createQuery(cq);
+            TypedQuery<T> q = applyReadHints(em.createQuery(cq), true);
             if (!all) {
                 q.setFirstResult(firstResult);
                 q.setMaxResults(maxResults);
             }
-            return q.getResultList();
-        } finally {
-            if (em != null /* && em.isOpen() */) {
-                em.close();
-            }
-        }
+            return loaded(em, q.getResultList());
+        });
     }
 
     public Long findByCount(T searchEntity) {
@@ -322,33 +849,1020 @@ public abstract class AbstractJpaController<T> implements JpaController<T> {
     }
 
     protected Long findByCount(T searchEntity, PredicatesProvider<T> predicateProvider) {
-        EntityManager em = null;
-        try {
-            em = getEntityManager();
-            CriteriaBuilder cb = em.getCriteriaBuilder();
-            CriteriaQuery<Long> cq = cb.createQuery(Long.class);
-            Root<T> root = cq.from(this.classType);
-            List<Predicate> predicates = predicateProvider.getPredicates(searchEntity, cb, cq, root);
-            cq.select(cb.count(root));
-            cq.where(predicates.toArray(new Predicate[predicates.size()]));
-            TypedQuery<Long> q = em.createQuery(cq);
-            return q.getSingleResult();
-        } finally {
-            if (em != null /* && em.isOpen() */) {
-                em.close();
-            }
-        }
+        return findByCount(searchEntity, predicateProvider, CountMode.CACHED);
     }
 
-    public interface PredicatesProvider<T> {
-        public List<Predicate> getPredicates(T searchEntity, CriteriaBuilder cb, CriteriaQuery<?> cq, Root<T> root);
+    private Long findByCount(T searchEntity, PredicatesProvider<T> predicateProvider, CountMode countMode) {
+        Object searchKey = this.countCache == null ? null : getSearchKey(searchEntity);
+        Object key = searchKey == null ? null : Arrays.asList("findByCount", predicateProvider, searchKey);
+        return cachedCount(countMode, key, () -> countBy(searchEntity, predicateProvider));
+    }
 
-        public Expression<String> getOrderBy(String orderBy, CriteriaBuilder cb, CriteriaQuery<?> cq, Root<T> root);
+    public List<Tuple> getProjection(List<SingularAttribute<T, ?>> attributes) {
+        return findProjectionBy(null, this.allPredicatesProvider, Tuple.class, attributes, true, -1, -1, null, true, false);
     }
 
-    private PredicatesProvider<T> defaultPredicatesProvider = new PredicatesProvider<T>() {
-        @Override
-        public List<Predicate> getPredicates(T searchEntity, CriteriaBuilder cb, CriteriaQuery<?> cq, Root<T> root) {
+    public List<Tuple> getProjection(List<SingularAttribute<T, ?>> attributes, int firstResult, int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc) {
+        return findProjectionBy(null, this.allPredicatesProvider, Tuple.class, attributes, false, firstResult, maxResults, orderBy, orderByIgnoreCase, desc);
+    }
+
+    public <D> List<D> getProjection(Class<D> resultType, List<SingularAttribute<T, ?>> attributes) {
+        return findProjectionBy(null, this.allPredicatesProvider, resultType, attributes, true, -1, -1, null, true, false);
+    }
+
+    public <D> List<D> getProjection(Class<D> resultType, List<SingularAttribute<T, ?>> attributes, int firstResult, int maxResults, String orderBy,
+            boolean orderByIgnoreCase, boolean desc) {
+        return findProjectionBy(null, this.allPredicatesProvider, resultType, attributes, false, firstResult, maxResults, orderBy, orderByIgnoreCase, desc);
+    }
+
+    public List<Tuple> findProjectionBy(T searchEntity, List<SingularAttribute<T, ?>> attributes) {
+        return findProjectionBy(searchEntity, this.defaultPredicatesProvider, Tuple.class, attributes, true, -1, -1, null, true, false);
+    }
+
+    public List<Tuple> findProjectionBy(T searchEntity, List<SingularAttribute<T, ?>> attributes, int firstResult, int maxResults, String orderBy,
+            boolean orderByIgnoreCase, boolean desc) {
+        return findProjectionBy(searchEntity, this.defaultPredicatesProvider, Tuple.class, attributes, false, firstResult, maxResults, orderBy, orderByIgnoreCase, desc);
+    }
+
+    public <D> List<D> findProjectionBy(Class<D> resultType, T searchEntity, List<SingularAttribute<T, ?>> attributes) {
+        return findProjectionBy(searchEntity, this.defaultPredicatesProvider, resultType, attributes, true, -1, -1, null, true, false);
+    }
+
+    public <D> List<D> findProjectionBy(Class<D> resultType, T searchEntity, List<SingularAttribute<T, ?>> attributes, int firstResult, int maxResults, String orderBy,
+            boolean orderByIgnoreCase, boolean desc) {
+        return findProjectionBy(searchEntity, this.defaultPredicatesProvider, resultType, attributes, false, firstResult, maxResults, orderBy, orderByIgnoreCase, desc);
+    }
+
+    public List<Tuple> findProjectionBy(SingularAttribute<T, ?> field, Object value, List<SingularAttribute<T, ?>> attributes) {
+        return findProjectionBy(null, fieldPredicatesProvider(field, value, false), Tuple.class, attributes, true, -1, -1, null, true, false);
+    }
+
+    public List<Tuple> findProjectionBy(SingularAttribute<T, ?> field, Object value, boolean ignoreCase, List<SingularAttribute<T, ?>> attributes, int firstResult,
+            int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc) {
+        return findProjectionBy(null, fieldPredicatesProvider(field, value, ignoreCase), Tuple.class, attributes, false, firstResult, maxResults, orderBy,
+                orderByIgnoreCase, desc);
+    }
+
+    public <D> List<D> findProjectionBy(Class<D> resultType, SingularAttribute<T, ?> field, Object value, List<SingularAttribute<T, ?>> attributes) {
+        return findProjectionBy(null, fieldPredicatesProvider(field, value, false), resultType, attributes, true, -1, -1, null, true, false);
+    }
+
+    public <D> List<D> findProjectionBy(Class<D> resultType, SingularAttribute<T, ?> field, Object value, boolean ignoreCase, List<SingularAttribute<T, ?>> attributes,
+            int firstResult, int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc) {
+        return findProjectionBy(null, fieldPredicatesProvider(field, value, ignoreCase), resultType, attributes, false, firstResult, maxResults, orderBy,
+                orderByIgnoreCase, desc);
+    }
+
+    /*
+     * Selects only the given attributes instead of the entity, so nothing is hydrated into or tracked by
+     * the persistence context. Tuple and Object[] results are built with multiselect, any other result
+     * type through its constructor taking the attributes in the given order.
+     */
+    protected <R> List<R> findProjectionBy(T searchEntity, PredicatesProvider<T> predicateProvider, Class<R> resultType, List<SingularAttribute<T, ?>> attributes,
+            boolean all, int firstResult, int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc) {
+        if (attributes == null || attributes.isEmpty()) {
+            throw new IllegalArgumentException("At least one attribute must be selected.");
+        }
+        Operation operation = startOperation("findProjectionBy").orderBy(orderBy, orderByIgnoreCase, desc).paging(all, firstResult, maxResults);
+        return read(operation, (EntityManager em) -> {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<R> cq = cb.createQuery(resultType);
+            Root<T> root = cq.from(this.classType);
+            List<Selection<?>> selections = new ArrayList<>(attributes.size());
+            for (SingularAttribute<T, ?> attribute : attributes) {
+                selections.add(root.get(attribute).alias(attribute.getName()));
+            }
+            if (resultType == Tuple.class || resultType == Object[].class) {
+                cq.multiselect(selections);
+            } else {
+                cq.select(cb.construct(resultType, selections.toArray(new Selection<?>[selections.size()])));
+            }
+            List<Predicate> predicates = predicateProvider.getPredicates(searchEntity, cb, cq, root);
+            cq.where(predicates.toArray(new Predicate[predicates.size()]));
+
+            Expression<String> orderByExpression = predicateProvider.getOrderBy(orderBy, cb, cq, root);
+            operation.orderedBy(orderByExpression);
+            if (orderByIgnoreCase && CharSequence.class.isAssignableFrom(orderByExpression.getJavaType())) {
+                orderByExpression = cb.upper(orderByExpression);
+            }
+
+            if (desc) {
+                cq.orderBy(cb.desc(orderByExpression));
+            } else {
+                cq.orderBy(cb.asc(orderByExpression));
+            }
+            TypedQuery<R> q = applyReadHints(em.createQuery(cq), false);
+            if (!all) {
+                q.setFirstResult(firstResult);
+                q.setMaxResults(maxResults);
+            }
+            return q.getResultList();
+        });
+    }
+
+    private Long countBy(T searchEntity, PredicatesProvider<T> predicateProvider) {
+        return read(startOperation("findByCountSearch"), (EntityManager em) -> {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<Long> cq = cb.createQuery(Long.class);
+            Root<T> root = cq.from(this.classType);
+            List<Predicate> predicates = predicateProvider.getPredicates(searchEntity, cb, cq, root);
+            cq.select(cb.count(root));
+            cq.where(predicates.toArray(new Predicate[predicates.size()]));
+            TypedQuery<Long> q = applyReadHints(em.createQuery(cq), false);
+            return q.getSingleResult();
+        });
+    }
+
+    public ResultPage<T> getPage(int firstResult, int maxResults) {
+        return getPage(firstResult, maxResults, null, true, false, CountMode.EXACT);
+    }
+
+    public ResultPage<T> getPage(int firstResult, int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc, CountMode countMode) {
+        return page(firstResult, maxResults, countMode, (int max) -> get(firstResult, max, orderBy, orderByIgnoreCase, desc),
+                () -> cachedCount(countMode, Collections.singletonList("getCount"), () -> countAll()));
+    }
+
+    public ResultPage<T> findPage(SingularAttribute<T, ?> field, Object value, int firstResult, int maxResults) {
+        return findPage(field, value, false, firstResult, maxResults, null, true, false, CountMode.EXACT);
+    }
+
+    public ResultPage<T> findPage(SingularAttribute<T, ?> field, Object value, boolean ignoreCase, int firstResult, int maxResults, String orderBy, boolean orderByIgnoreCase,
+            boolean desc, CountMode countMode) {
+        return page(firstResult, maxResults, countMode, (int max) -> findBy(field, value, ignoreCase, firstResult, max, orderBy, orderByIgnoreCase, desc),
+                () -> findByCount(field, value, ignoreCase, countMode));
+    }
+
+    public ResultPage<T> findPage(T searchEntity, int firstResult, int maxResults) {
+        return findPage(searchEntity, firstResult, maxResults, null, true, false, CountMode.EXACT);
+    }
+
+    public ResultPage<T> findPage(T searchEntity, int firstResult, int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc, CountMode countMode) {
+        return findPage(searchEntity, this.defaultPredicatesProvider, firstResult, maxResults, orderBy, orderByIgnoreCase, desc, countMode);
+    }
+
+    protected ResultPage<T> findPage(T searchEntity, PredicatesProvider<T> predicateProvider, int firstResult, int maxResults, String orderBy, boolean orderByIgnoreCase,
+            boolean desc, CountMode countMode) {
+        return page(firstResult, maxResults, countMode, (int max) -> findBy(searchEntity, predicateProvider, firstResult, max, orderBy, orderByIgnoreCase, desc),
+                () -> findByCount(searchEntity, predicateProvider, countMode));
+    }
+
+    /*
+     * Fetches a page and its total. With a count executor set, the count runs on it while the page is
+     * fetched on the calling thread. CountMode.NONE skips the count and fetches one extra row instead
+     * to tell whether there is a next page.
+     */
+    private ResultPage<T> page(int firstResult, int maxResults, CountMode countMode, IntFunction<List<T>> fetch, Supplier<Long> count) {
+        if (countMode == CountMode.NONE) {
+            List<T> items = fetch.apply(maxResults + 1);
+            boolean hasNext = items.size() > maxResults;
+            return new ResultPage<>(hasNext ? items.subList(0, maxResults) : items, firstResult, maxResults, null, hasNext);
+        }
+
+        Executor executor = isPinnedToPrimary() ? null : this.countExecutor;
+        CompletableFuture<Long> futureTotal = executor == null ? null : CompletableFuture.supplyAsync(count, executor);
+        List<T> items = fetch.apply(maxResults);
+        Long total;
+        if (futureTotal == null) {
+            total = count.get();
+        } else {
+            try {
+                total = futureTotal.join();
+            } catch (CompletionException ex) {
+                if (ex.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ex.getCause();
+                }
+                throw ex;
+            }
+        }
+        return new ResultPage<>(items, firstResult, maxResults, total, Math.max(firstResult, 0) + items.size() < total);
+    }
+
+    private Long cachedCount(CountMode countMode, Object key, Supplier<Long> counter) {
+        CountCache cache = this.countCache;
+        if (cache == null || key == null || currentUnitOfWork() != null) {
+            return counter.get();
+        }
+        key = sharedKey(key);
+        if (countMode == CountMode.CACHED) {
+            Long cached = cache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        long generation = this.cacheGeneration.get();
+        Long count = fillingCache(counter);
+        if (this.cacheGeneration.get() == generation) {
+            cache.put(key, count);
+        }
+        return count;
+    }
+
+    /*
+     * Key identifying the predicates a search entity produces, used to cache its counts. The default
+     * returns null, so findByCount(searchEntity) and the findPage totals are never cached: the key has
+     * to cover everything getSearchPredicates reads, including transient filter fields. Return
+     * getAttributeSearchKey(searchEntity) when the predicates only read mapped attributes.
+     */
+    protected Object getSearchKey(T searchEntity) {
+        return null;
+    }
+
+    /*
+     * the non-null values of the search entity's singular attributes, null if they cannot be read
+     */
+    protected final Object getAttributeSearchKey(T searchEntity) {
+        if (searchEntity == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, Object> key = new TreeMap<>();
+        try {
+            for (SingularAttribute<? super T, ?> attribute : this.emf.getMetamodel().entity(this.classType).getSingularAttributes()) {
+                Member member = attribute.getJavaMember();
+                Object value;
+                if (member instanceof Field) {
+                    Field field = (Field) member;
+                    field.setAccessible(true);
+                    value = field.get(searchEntity);
+                } else if (member instanceof Method) {
+                    Method method = (Method) member;
+                    method.setAccessible(true);
+                    value = method.invoke(searchEntity);
+                } else {
+                    return null;
+                }
+                if (value != null) {
+                    key.put(attribute.getName(), value);
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            log.debug("Could not build search key for {}, its count will not be cached: {}", this.classType.getSimpleName(), ex.getMessage());
+            return null;
+        }
+        return key;
+    }
+
+    public KeysetPage<T> getAfter(KeysetCursor after, int maxResults) {
+        return getAfter(after, maxResults, null, false);
+    }
+
+    public KeysetPage<T> getAfter(KeysetCursor after, int maxResults, String orderBy, boolean desc) {
+        return getAfter(after, maxResults, orderBy, true, desc);
+    }
+
+    public KeysetPage<T> getAfter(KeysetCursor after, int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc) {
+        return findByAfter(null, this.allPredicatesProvider, after, maxResults, orderBy, orderByIgnoreCase, desc);
+    }
+
+    public KeysetPage<T> findByAfter(SingularAttribute<T, ?> field, Object value, KeysetCursor after, int maxResults) {
+        return findByAfter(field, value, false, after, maxResults, null, true, false);
+    }
+
+    public KeysetPage<T> findByAfter(SingularAttribute<T, ?> field, Object value, boolean ignoreCase, KeysetCursor after, int maxResults, String orderBy, boolean orderByIgnoreCase,
+            boolean desc) {
+        return findByAfter(null, fieldPredicatesProvider(field, value, ignoreCase), after, maxResults, orderBy, orderByIgnoreCase, desc);
+    }
+
+    public KeysetPage<T> findByAfter(T searchEntity, KeysetCursor after, int maxResults) {
+        return findByAfter(searchEntity, after, maxResults, null, true, false);
+    }
+
+    public KeysetPage<T> findByAfter(T searchEntity, KeysetCursor after, int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc) {
+        return findByAfter(searchEntity, this.defaultPredicatesProvider, after, maxResults, orderBy, orderByIgnoreCase, desc);
+    }
+
+    /*
+     * Keyset (seek) paging: orders by the order by expression with the primary key as tie-breaker and
+     * continues after the given cursor instead of skipping rows with setFirstResult, so every page
+     * costs the same no matter how deep it is. A null cursor returns the first page. Rows whose order
+     * by value is null follow all other rows in both directions, ordered by primary key; they are read
+     * with a separate IS NULL query once the other rows ran out, unless the order by attribute is the
+     * id or mapped as not optional.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    protected KeysetPage<T> findByAfter(T searchEntity, PredicatesProvider<T> predicateProvider, KeysetCursor after, int maxResults, String orderBy, boolean orderByIgnoreCase,
+            boolean desc) {
+        if (maxResults < 1) {
+            throw new IllegalArgumentException("Max results must be greater than 0.");
+        }
+        Operation operation = startOperation("findByAfter").orderBy(orderBy, orderByIgnoreCase, desc).paging(0, maxResults);
+        return read(operation, (EntityManager em) -> {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<Object[]> cq = cb.createQuery(Object[].class);
+            Root<T> root = cq.from(this.classType);
+            List<Predicate> predicates = new ArrayList<>(predicateProvider.getPredicates(searchEntity, cb, cq, root));
+
+            Expression<String> orderByExpression = predicateProvider.getOrderBy(orderBy, cb, cq, root);
+            operation.orderedBy(orderByExpression);
+            boolean nullable = isNullable(orderByExpression);
+            if (orderByIgnoreCase && CharSequence.class.isAssignableFrom(orderByExpression.getJavaType())) {
+                orderByExpression = cb.upper(orderByExpression);
+            }
+            Expression<Comparable> orderByKey = (Expression<Comparable>) (Expression<?>) orderByExpression;
+            Expression<Comparable> idKey = root.get(getIdAttribute(em).getName());
+            Comparable id = after == null ? null : (Comparable) convertToPrimaryKeyType(after.getPrimaryKey());
+            Predicate beyondId = after == null ? null : desc ? cb.lessThan(idKey, id) : cb.greaterThan(idKey, id);
+            cq.multiselect(root, orderByKey, idKey);
+
+            List<Object[]> rows = new ArrayList<>();
+            if (after == null || after.getOrderValue() != null) {
+                List<Predicate> valuePredicates = new ArrayList<>(predicates);
+                if (nullable) {
+                    valuePredicates.add(cb.isNotNull(orderByKey));
+                }
+                if (after != null) {
+                    Comparable orderValue = (Comparable) KeysetCursor.convert(after.getOrderValue(), orderByKey.getJavaType());
+                    Predicate beyondOrder = desc ? cb.lessThan(orderByKey, orderValue) : cb.greaterThan(orderByKey, orderValue);
+                    valuePredicates.add(cb.or(beyondOrder, cb.and(cb.equal(orderByKey, orderValue), beyondId)));
+                }
+                cq.where(valuePredicates.toArray(new Predicate[valuePredicates.size()]));
+                if (desc) {
+                    cq.orderBy(cb.desc(orderByKey), cb.desc(idKey));
+                } else {
+                    cq.orderBy(cb.asc(orderByKey), cb.asc(idKey));
+                }
+                TypedQuery<Object[]> q = applyReadHints(em.createQuery(cq), false);
+                q.setMaxResults(maxResults + 1);
+                rows.addAll(q.getResultList());
+            }
+            if (nullable && rows.size() <= maxResults) {
+                List<Predicate> nullPredicates = new ArrayList<>(predicates);
+                nullPredicates.add(cb.isNull(orderByKey));
+                if (after != null && after.getOrderValue() == null) {
+                    nullPredicates.add(beyondId);
+                }
+                cq.where(nullPredicates.toArray(new Predicate[nullPredicates.size()]));
+                cq.orderBy(desc ? cb.desc(idKey) : cb.asc(idKey));
+                TypedQuery<Object[]> q = applyReadHints(em.createQuery(cq), false);
+                q.setMaxResults(maxResults + 1 - rows.size());
+                rows.addAll(q.getResultList());
+            }
+
+            List<T> items = new ArrayList<>(Math.min(rows.size(), maxResults));
+            for (int i = 0; i < rows.size() && i < maxResults; i++) {
+                items.add((T) rows.get(i)[0]);
+            }
+            KeysetCursor nextCursor = null;
+            if (rows.size() > maxResults) {
+                Object[] last = rows.get(maxResults - 1);
+                nextCursor = new KeysetCursor(last[1], last[2]);
+            }
+            return new KeysetPage<>(items, nextCursor);
+        });
+    }
+
+    /*
+     * false only for paths to the id or to attributes mapped as not optional
+     */
+    private static boolean isNullable(Expression<?> expression) {
+        if (expression instanceof Path && ((Path<?>) expression).getModel() instanceof SingularAttribute) {
+            SingularAttribute<?, ?> attribute = (SingularAttribute<?, ?>) ((Path<?>) expression).getModel();
+            return !attribute.isId() && attribute.isOptional() && !attribute.getJavaType().isPrimitive();
+        }
+        return true;
+    }
+
+    public Stream<T> streamAll() {
+        return streamAll(null, true, false);
+    }
+
+    public Stream<T> streamAll(String orderBy, boolean orderByIgnoreCase, boolean desc) {
+        return streamBy(null, this.allPredicatesProvider, orderBy, orderByIgnoreCase, desc);
+    }
+
+    public Stream<T> streamBy(SingularAttribute<T, ?> field, Object value) {
+        return streamBy(field, value, false, null, true, false);
+    }
+
+    public Stream<T> streamBy(SingularAttribute<T, ?> field, Object value, boolean ignoreCase, String orderBy, boolean orderByIgnoreCase, boolean desc) {
+        return streamBy(null, fieldPredicatesProvider(field, value, ignoreCase), orderBy, orderByIgnoreCase, desc);
+    }
+
+    public Stream<T> streamBy(T searchEntity) {
+        return streamBy(searchEntity, null, true, false);
+    }
+
+    public Stream<T> streamBy(T searchEntity, String orderBy, boolean orderByIgnoreCase, boolean desc) {
+        return streamBy(searchEntity, this.defaultPredicatesProvider, orderBy, orderByIgnoreCase, desc);
+    }
+
+    /*
+     * Reads the results lazily through a forward-only database cursor instead of loading them into
+     * a list. The persistence context is cleared every streamFetchSize rows, so entities handed out
+     * earlier are detached, except inside a session whose persistence context is left alone. The
+     * returned stream holds an EntityManager and a JDBC cursor until it is exhausted or closed, use it
+     * in a try-with-resources block. Outside a session the cursor is opened in a transaction that is
+     * rolled back when the stream is closed, since drivers such as PostgreSQL's load the whole result
+     * on an autocommit connection; MySQL additionally needs useCursorFetch=true to stream by fetch size.
+     */
+    protected Stream<T> streamBy(T searchEntity, PredicatesProvider<T> predicateProvider, String orderBy, boolean orderByIgnoreCase, boolean desc) {
+        Operation operation = startOperation("stream").orderBy(orderBy, orderByIgnoreCase, desc);
+        EntityManager em = operation.openForRead();
+        try {
+            if (!operation.bound) {
+                em.getTransaction().begin();
+                em.unwrap(Connection.class);
+            }
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<T> cq = cb.createQuery(this.classType);
+            Root<T> root = cq.from(this.classType);
+            List<Predicate> predicates = predicateProvider.getPredicates(searchEntity, cb, cq, root);
+            cq.select(root);
+            cq.where(predicates.toArray(new Predicate[predicates.size()]));
+
+            Expression<String> orderByExpression = predicateProvider.getOrderBy(orderBy, cb, cq, root);
+            operation.orderedBy(orderByExpression);
+            if (orderByIgnoreCase && CharSequence.class.isAssignableFrom(orderByExpression.getJavaType())) {
+                orderByExpression = cb.upper(orderByExpression);
+            }
+
+            if (desc) {
+                cq.orderBy(cb.desc(orderByExpression));
+            } else {
+                cq.orderBy(cb.asc(orderByExpression));
+            }
+            Query q = applyReadHints(em.createQuery(cq), true);
+            q.setHint(QueryHints.SCROLLABLE_CURSOR, HintValues.TRUE);
+            q.setHint(QueryHints.RESULT_SET_TYPE, ResultSetType.ForwardOnly);
+            q.setHint(QueryHints.RESULT_SET_CONCURRENCY, ResultSetConcurrency.ReadOnly);
+            q.setHint(QueryHints.JDBC_FETCH_SIZE, this.streamFetchSize);
+            CursorSpliterator spliterator = new CursorSpliterator(operation, em, (ScrollableCursor) q.getSingleResult(), operation.bound ? 0 : this.streamFetchSize);
+            return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+        } catch (RuntimeException ex) {
+            operation.failed(ex);
+            try {
+                rollbackStream(operation, em);
+            } finally {
+                operation.close(em);
+                operation.finish();
+            }
+            throw ex;
+        }
+    }
+
+    /*
+     * ends the transaction a stream's cursor was opened in, it only read
+     */
+    private void rollbackStream(Operation operation, EntityManager em) {
+        if (!operation.bound && em.getTransaction().isActive()) {
+            em.getTransaction().rollback();
+        }
+    }
+
+    public void forEachAll(Consumer<? super T> action) {
+        try (Stream<T> stream = streamAll()) {
+            stream.forEach(action);
+        }
+    }
+
+    public void forEachBy(SingularAttribute<T, ?> field, Object value, Consumer<? super T> action) {
+        try (Stream<T> stream = streamBy(field, value)) {
+            stream.forEach(action);
+        }
+    }
+
+    public void forEachBy(T searchEntity, Consumer<? super T> action) {
+        try (Stream<T> stream = streamBy(searchEntity)) {
+            stream.forEach(action);
+        }
+    }
+
+    public ScanProgress scan(int partitions, int parallelism, Consumer<? super T> consumer) {
+        return scan(null, partitions, parallelism, null, new ScanProgress(), consumer);
+    }
+
+    public ScanProgress scan(int partitions, int parallelism, ScanProgress progress, Consumer<? super T> consumer) {
+        return scan(null, partitions, parallelism, null, progress, consumer);
+    }
+
+    public ScanProgress scan(SingularAttribute<T, ? extends Number> attribute, int partitions, int parallelism, ScanProgress progress, Consumer<? super T> consumer) {
+        return scan(attribute, partitions, parallelism, null, progress, consumer);
+    }
+
+    /*
+     * Reads every entity by splitting the range of an integral attribute, the primary key when null,
+     * into partitions of equal width and streaming up to parallelism partitions at the same time, each
+     * on its own EntityManager. The consumer is called concurrently from the scanning threads. The
+     * partitions run on the executor, or on a pool created for the scan when it is null. When a
+     * partition fails no further partitions are started and the first failure is thrown once the
+     * running ones finished; the progress then tells which partitions a resumed scan has to read.
+     * Rows whose scan attribute is null are read by one last partition, added unless the attribute
+     * is the id or mapped as not optional.
+     */
+    public ScanProgress scan(SingularAttribute<T, ? extends Number> attribute, int partitions, int parallelism, Executor executor, ScanProgress progress,
+            Consumer<? super T> consumer) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("Partitions must be greater than 0.");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be greater than 0.");
+        }
+        if (progress == null) {
+            progress = new ScanProgress();
+        }
+
+        Operation operation = startOperation("scan");
+        try {
+            String scanAttribute = initializeScan(attribute, partitions, progress);
+            Queue<ScanPartition> pending = new ConcurrentLinkedQueue<>();
+            for (ScanPartition partition : progress.getPartitions()) {
+                if (!partition.isCompleted()) {
+                    pending.add(partition);
+                }
+            }
+
+            List<RuntimeException> failures = Collections.synchronizedList(new ArrayList<>());
+            Runnable worker = () -> {
+                ScanPartition partition;
+                while (failures.isEmpty() && (partition = pending.poll()) != null) {
+                    try {
+                        scanPartition(scanAttribute, partition, consumer);
+                    } catch (RuntimeException ex) {
+                        log.debug("Scan of partition {} failed: {}", partition.getIndex(), ex.getMessage());
+                        failures.add(ex);
+                    }
+                }
+            };
+            runWorkers(worker, Math.min(parallelism, pending.size()), executor);
+
+            operation.rows(progress.getRows());
+            if (!failures.isEmpty()) {
+                RuntimeException failure = failures.get(0);
+                for (int i = 1; i < failures.size(); i++) {
+                    failure.addSuppressed(failures.get(i));
+                }
+                throw failure;
+            }
+            return progress;
+        } catch (RuntimeException ex) {
+            operation.failed(ex);
+            throw ex;
+        } finally {
+            operation.finish();
+        }
+    }
+
+    private String initializeScan(SingularAttribute<T, ? extends Number> attribute, int partitions, ScanProgress progress) {
+        if (progress.isInitialized()) {
+            if (attribute != null && !attribute.getName().equals(progress.getAttribute())) {
+                throw new IllegalArgumentException("Scan progress is for attribute " + progress.getAttribute() + ", not " + attribute.getName() + ".");
+            }
+            return progress.getAttribute();
+        }
+
+        Object[] bounds = read(startOperation("scanBounds"), (EntityManager em) -> {
+            SingularAttribute<? super T, ?> scanAttribute = attribute == null ? getIdAttribute(em) : attribute;
+            Class<?> type = wrap(scanAttribute.getJavaType());
+            if (type != Long.class && type != Integer.class && type != Short.class && type != Byte.class) {
+                throw new IllegalArgumentException("Scan attribute " + scanAttribute.getName() + " must be an integral number, not " + type.getName() + ".");
+            }
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<Object[]> cq = cb.createQuery(Object[].class);
+            Root<T> root = cq.from(this.classType);
+            Expression<Number> path = root.get(scanAttribute.getName());
+            cq.multiselect(cb.min(path), cb.max(path));
+            Object[] minMax = applyReadHints(em.createQuery(cq), false).getSingleResult();
+            boolean nullable = scanAttribute.isOptional() && !scanAttribute.isId();
+            return new Object[] { scanAttribute.getName(), minMax[0], minMax[1], nullable };
+        });
+
+        List<ScanPartition> ranges = new ArrayList<>();
+        if (bounds[1] != null) {
+            BigInteger min = BigInteger.valueOf(((Number) bounds[1]).longValue());
+            BigInteger max = BigInteger.valueOf(((Number) bounds[2]).longValue());
+            BigInteger span = max.subtract(min).add(BigInteger.ONE);
+            BigInteger count = span.min(BigInteger.valueOf(partitions));
+            BigInteger width = span.add(count).subtract(BigInteger.ONE).divide(count);
+            BigInteger lower = min;
+            while (lower.compareTo(max) <= 0) {
+                BigInteger upper = lower.add(width).subtract(BigInteger.ONE).min(max);
+                ranges.add(new ScanPartition(ranges.size(), lower.longValue(), upper.longValue(), 0, false));
+                lower = upper.add(BigInteger.ONE);
+            }
+        }
+        if ((Boolean) bounds[3]) {
+            ranges.add(ScanPartition.nullValues(ranges.size(), 0, false));
+        }
+        progress.initialize((String) bounds[0], ranges);
+        return (String) bounds[0];
+    }
+
+    private void scanPartition(String attribute, ScanPartition partition, Consumer<? super T> consumer) {
+        partition.started();
+        PredicatesProvider<T> rangePredicatesProvider = new PredicatesProvider<T>() {
+            @Override
+            @SuppressWarnings({ "unchecked", "rawtypes" })
+            public List<Predicate> getPredicates(T searchEntity, CriteriaBuilder cb, CriteriaQuery<?> cq, Root<T> root) {
+                Expression path = root.get(attribute);
+                if (partition.isNullValues()) {
+                    return new ArrayList<>(Arrays.asList(cb.isNull(path)));
+                }
+                Class<?> type = path.getJavaType();
+                Comparable lower = (Comparable) KeysetCursor.convert(partition.getLowerBound(), type);
+                Comparable upper = (Comparable) KeysetCursor.convert(partition.getUpperBound(), type);
+                return new ArrayList<>(Arrays.asList(cb.between(path, lower, upper)));
+            }
+
+            @Override
+            public Expression<String> getOrderBy(String orderBy, CriteriaBuilder cb, CriteriaQuery<?> cq, Root<T> root) {
+                return root.get(attribute);
+            }
+        };
+        try (Stream<T> stream = streamBy(null, rangePredicatesProvider, null, false, false)) {
+            stream.forEach((T entity) -> {
+                consumer.accept(entity);
+                partition.delivered();
+            });
+        }
+        partition.completed();
+    }
+
+    private void runWorkers(Runnable worker, int workers, Executor executor) {
+        if (workers == 0) {
+            return;
+        }
+        ExecutorService ownExecutor = null;
+        if (executor == null) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            ownExecutor = Executors.newFixedThreadPool(workers, (Runnable runnable) -> {
+                Thread thread = new Thread(runnable, "jpa-scan-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor = ownExecutor;
+        }
+        try {
+            CompletableFuture<?>[] running = new CompletableFuture<?>[workers];
+            for (int i = 0; i < workers; i++) {
+                running[i] = CompletableFuture.runAsync(worker, executor);
+            }
+            CompletableFuture.allOf(running).join();
+        } finally {
+            if (ownExecutor != null) {
+                ownExecutor.shutdown();
+            }
+        }
+    }
+
+    private class CursorSpliterator extends Spliterators.AbstractSpliterator<T> {
+
+        private final Operation operation;
+        private final EntityManager em;
+        private final ScrollableCursor cursor;
+        private final int clearInterval;
+        private int count = 0;
+        private boolean closed = false;
+
+        CursorSpliterator(Operation operation, EntityManager em, ScrollableCursor cursor, int clearInterval) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.operation = operation;
+            this.em = em;
+            this.cursor = cursor;
+            this.clearInterval = clearInterval;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (closed) {
+                return false;
+            }
+            if (!cursor.hasNext()) {
+                close();
+                return false;
+            }
+            action.accept((T) cursor.next());
+            count++;
+            if (clearInterval > 0 && count % clearInterval == 0) {
+                em.clear();
+            }
+            return true;
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                cursor.close();
+            } finally {
+                try {
+                    rollbackStream(operation, em);
+                } finally {
+                    operation.rows(count);
+                    operation.close(em);
+                    operation.finish();
+                }
+            }
+        }
+    }
+
+    public PreparedQueryCache getPreparedQueryCache() {
+        return preparedQueryCache;
+    }
+
+    /*
+     * number of query shapes kept prepared as named queries, 0 builds every query from scratch
+     */
+    public void setPreparedQueryCacheSize(int size) {
+        this.preparedQueryCache = new PreparedQueryCache(size);
+    }
+
+    private String queryShape(String method, SingularAttribute<T, ?> field, boolean ignoreCase, SingularAttribute<T, ?> orderByAttribute, boolean orderByIgnoreCase,
+            boolean desc) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(this.classType.getName());
+        builder.append("#").append(method);
+        builder.append("|").append(field == null ? "" : field.getName());
+        builder.append("|").append(ignoreCase);
+        builder.append("|").append(orderByAttribute == null ? "" : orderByAttribute.getName());
+        builder.append("|").append(orderByIgnoreCase);
+        builder.append("|").append(desc);
+        return builder.toString();
+    }
+
+    /*
+     * Returns the query registered under the shape name, building and registering it on a miss. The
+     * builder must use parameters rather than literals for anything that varies between calls with
+     * the same shape, because the registered query is reused with only its parameters rebound. Read
+     * options are applied after registering so they never become part of the shared query.
+     */
+    private <R> TypedQuery<R> createPreparedQuery(EntityManager em, String shape, Class<R> resultType, Function<CriteriaBuilder, CriteriaQuery<R>> builder) {
+        PreparedQueryCache cache = this.preparedQueryCache;
+        EntityManagerFactory factory = em.getEntityManagerFactory();
+        if (cache.isEnabled() && cache.lookup(shape, factory)) {
+            try {
+                return applyReadHints(em.createNamedQuery(shape, resultType), resultType == this.classType);
+            } catch (IllegalArgumentException ex) {
+                log.debug("Prepared query {} is not registered, preparing it again: {}", shape, ex.getMessage());
+                cache.remove(shape);
+            }
+        }
+        TypedQuery<R> q = em.createQuery(builder.apply(em.getCriteriaBuilder()));
+        if (cache.isEnabled()) {
+            factory.addNamedQuery(shape, q);
+            cache.registered(shape, factory);
+        }
+        return applyReadHints(q, resultType == this.classType);
+    }
+
+    /*
+     * The value parameter is declared as Object rather than the attribute type, so a value of another
+     * type (an Integer or String for a Long attribute) is still bound and compared by the database.
+     */
+    private Predicate fieldPredicate(CriteriaBuilder cb, Root<T> root, SingularAttribute<T, ?> field, boolean isNull, boolean ignoreCase) {
+        if (isNull) {
+            return cb.isNull(root.get(field));
+        } else if (ignoreCase) {
+            return cb.equal(cb.upper(root.get(field.getName())), cb.parameter(String.class, FIELD_VALUE_PARAMETER));
+        }
+        return cb.equal(root.get(field), cb.parameter(Object.class, FIELD_VALUE_PARAMETER));
+    }
+
+    private void bindFieldValue(TypedQuery<?> q, Object value, boolean ignoreCase) {
+        if (value == null) {
+            return;
+        }
+        q.setParameter(FIELD_VALUE_PARAMETER, ignoreCase ? value.toString().toUpperCase() : value);
+    }
+
+    private static Class<?> wrap(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type;
+        } else if (type == int.class) {
+            return Integer.class;
+        } else if (type == long.class) {
+            return Long.class;
+        } else if (type == boolean.class) {
+            return Boolean.class;
+        } else if (type == double.class) {
+            return Double.class;
+        } else if (type == float.class) {
+            return Float.class;
+        } else if (type == short.class) {
+            return Short.class;
+        } else if (type == byte.class) {
+            return Byte.class;
+        }
+        return Character.class;
+    }
+
+    private Operation startOperation(String name) {
+        return new Operation(name);
+    }
+
+    /*
+     * Runs a read on its own EntityManager and records it as the given operation.
+     */
+    private <R> R read(Operation operation, Function<EntityManager, R> work) {
+        EntityManager em = null;
+        try {
+            em = operation.openForRead();
+            return operation.result(work.apply(em));
+        } catch (RuntimeException ex) {
+            operation.failed(ex);
+            throw ex;
+        } finally {
+            operation.close(em);
+            operation.finish();
+        }
+    }
+
+    /*
+     * Collects the measurements of one operation and hands them to the metrics sink and the slow query
+     * log when finished. Not thread safe, an operation is used by the thread that runs it.
+     */
+    private final class Operation {
+
+        private final String name;
+        private final long start = System.nanoTime();
+        private String field = null;
+        private boolean ignoreCase = false;
+        private boolean ordered = false;
+        private String orderBy = null;
+        private String orderedBy = null;
+        private boolean orderByIgnoreCase = false;
+        private boolean desc = false;
+        private int firstResult = -1;
+        private int maxResults = -1;
+        private long entityManagerOpened = 0;
+        private boolean bound = false;
+        private ReadReplicas replicas = null;
+        private int replica = -1;
+        private long entityManagerNanos = 0;
+        private long rows = 0;
+        private int commits = 0;
+        private int rollbacks = 0;
+        private Throwable failure = null;
+
+        Operation(String name) {
+            this.name = name;
+        }
+
+        Operation field(SingularAttribute<T, ?> field, boolean ignoreCase) {
+            this.field = field == null ? null : field.getName();
+            this.ignoreCase = ignoreCase;
+            return this;
+        }
+
+        Operation orderBy(String orderBy, boolean orderByIgnoreCase, boolean desc) {
+            this.ordered = true;
+            this.orderBy = orderBy;
+            this.orderByIgnoreCase = orderByIgnoreCase;
+            this.desc = desc;
+            return this;
+        }
+
+        /*
+         * the order by expression a predicates provider handed out, recorded instead of the requested order by
+         */
+        void orderedBy(Expression<?> expression) {
+            if (expression instanceof Path && ((Path<?>) expression).getModel() instanceof SingularAttribute) {
+                this.orderedBy = ((SingularAttribute<?, ?>) ((Path<?>) expression).getModel()).getName();
+            } else {
+                this.orderedBy = "(expression)";
+            }
+        }
+
+        Operation paging(int firstResult, int maxResults) {
+            this.firstResult = firstResult;
+            this.maxResults = maxResults;
+            return this;
+        }
+
+        Operation paging(boolean all, int firstResult, int maxResults) {
+            return all ? this : paging(firstResult, maxResults);
+        }
+
+        EntityManager open() {
+            this.entityManagerOpened = System.nanoTime();
+            UnitOfWork unitOfWork = currentUnitOfWork();
+            if (unitOfWork != null) {
+                this.bound = true;
+                return unitOfWork.getEntityManager();
+            }
+            return getEntityManager();
+        }
+
+        /*
+         * a replica EntityManager when replicas are set, the thread is not pinned to the primary and the
+         * read does not fill a cache
+         */
+        EntityManager openForRead() {
+            ReadReplicas replicas = readReplicas;
+            if (replicas == null || isPinnedToPrimary() || fillingCache.get() != null) {
+                return open();
+            }
+            this.entityManagerOpened = System.nanoTime();
+            int replica = replicas.acquire();
+            try {
+                EntityManager em = getReadEntityManager(replicas.get(replica));
+                this.replicas = replicas;
+                this.replica = replica;
+                return em;
+            } catch (RuntimeException ex) {
+                replicas.release(replica);
+                throw ex;
+            }
+        }
+
+        /*
+         * the session's EntityManager is left open for the rest of the session
+         */
+        void close(EntityManager em) {
+            if (em != null && !this.bound) {
+                try {
+                    em.close();
+                } finally {
+                    this.entityManagerNanos += System.nanoTime() - this.entityManagerOpened;
+                    if (this.replicas != null) {
+                        this.replicas.release(this.replica);
+                        this.replicas = null;
+                    }
+                }
+            } else if (em != null) {
+                this.entityManagerNanos += System.nanoTime() - this.entityManagerOpened;
+            }
+        }
+
+        <R> R result(R result) {
+            if (result == null) {
+                this.rows = 0;
+            } else if (result instanceof Collection) {
+                this.rows = ((Collection<?>) result).size();
+            } else if (result instanceof Map) {
+                this.rows = ((Map<?, ?>) result).size();
+            } else if (result instanceof KeysetPage) {
+                this.rows = ((KeysetPage<?>) result).getItems().size();
+            } else {
+                this.rows = 1;
+            }
+            return result;
+        }
+
+        void rows(long rows) {
+            this.rows = rows;
+        }
+
+        void committed(int transactions) {
+            this.commits += transactions;
+        }
+
+        void rolledBack(int transactions) {
+            this.rollbacks += transactions;
+        }
+
+        void failed(Throwable failure) {
+            this.failure = failure;
+        }
+
+        void finish() {
+            MetricsSink sink = metricsSink;
+            long threshold = slowQueryThresholdNanos;
+            if (sink == null && threshold == 0) {
+                return;
+            }
+            long latency = System.nanoTime() - this.start;
+            String orderBy = this.orderedBy != null ? this.orderedBy : this.ordered ? getValidOrDefaultOrderBy(this.orderBy).getName() : null;
+            OperationMetrics metrics = new OperationMetrics(classType.getSimpleName(), this.name, this.field, this.ignoreCase, orderBy, this.orderByIgnoreCase,
+                    this.desc, this.firstResult, this.maxResults, latency, this.entityManagerNanos, this.rows, this.commits, this.rollbacks, this.failure);
+            if (threshold > 0 && latency >= threshold) {
+                log.warn("Slow {}: {} ms, {} ms in the entity manager, {} rows", metrics.getShape(), TimeUnit.NANOSECONDS.toMillis(latency),
+                        TimeUnit.NANOSECONDS.toMillis(this.entityManagerNanos), this.rows);
+            }
+            if (sink != null) {
+                try {
+                    sink.record(metrics);
+                } catch (RuntimeException ex) {
+                    log.debug("Metrics sink failed to record {}: {}", metrics.getShape(), ex.getMessage());
+                }
+            }
+        }
+    }
+
+    protected SingularAttribute<? super T, ?> getIdAttribute(EntityManager em) {
+        if (this.idAttribute == null) {
+            EntityType<T> entityType = em.getMetamodel().entity(this.classType);
+            if (!entityType.hasSingleIdAttribute()) {
+                throw new IllegalStateException(this.classType.getName() + " does not have a single id attribute.");
+            }
+            this.idAttribute = entityType.getId(entityType.getIdType().getJavaType());
+        }
+        return this.idAttribute;
+    }
+
+    /*
+     * cq is null when the predicates are built for deleteWhere/updateWhere
+     */
+    public interface PredicatesProvider<T> {
+        public List<Predicate> getPredicates(T searchEntity, CriteriaBuilder cb, CriteriaQuery<?> cq, Root<T> root);
+
+        public Expression<String> getOrderBy(String orderBy, CriteriaBuilder cb, CriteriaQuery<?> cq, Root<T> root);
+    }
+
+    private PredicatesProvider<T> defaultPredicatesProvider = new PredicatesProvider<T>() {
+        @Override
+        public List<Predicate> getPredicates(T searchEntity, CriteriaBuilder cb, CriteriaQuery<?> cq, Root<T> root) {
             return getSearchPredicates(searchEntity, cb, root);
         }
 
@@ -358,16 +1872,50 @@ public abstract class AbstractJpaController<T> implements JpaController<T> {
         }
     };
 
+    private PredicatesProvider<T> allPredicatesProvider = new PredicatesProvider<T>() {
+        @Override
+        public List<Predicate> getPredicates(T searchEntity, CriteriaBuilder cb, CriteriaQuery<?> cq, Root<T> root) {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public Expression<String> getOrderBy(String orderBy, CriteriaBuilder cb, CriteriaQuery<?> cq, Root<T> root) {
+            return root.get(getValidOrDefaultOrderBy(orderBy).getName());
+        }
+    };
+
+    private PredicatesProvider<T> fieldPredicatesProvider(SingularAttribute<T, ?> field, Object value, boolean ignoreCase) {
+        return new PredicatesProvider<T>() {
+            @Override
+            public List<Predicate> getPredicates(T searchEntity, CriteriaBuilder cb, CriteriaQuery<?> cq, Root<T> root) {
+                List<Predicate> predicates = new ArrayList<>();
+                if (value == null) {
+                    predicates.add(cb.isNull(root.get(field)));
+                } else if (ignoreCase && CharSequence.class.isAssignableFrom(field.getJavaType())) {
+                    predicates.add(cb.equal(cb.upper(root.get(field.getName())), value.toString().toUpperCase()));
+                } else {
+                    predicates.add(cb.equal(root.get(field), value));
+                }
+                return predicates;
+            }
+
+            @Override
+            public Expression<String> getOrderBy(String orderBy, CriteriaBuilder cb, CriteriaQuery<?> cq, Root<T> root) {
+                return root.get(getValidOrDefaultOrderBy(orderBy).getName());
+            }
+        };
+    }
+
     public T create(T entity) {
-        return this.performTransaction(entity, (EntityManager em, T entity2) -> em.persist(entity2));
+        return this.performTransaction("create", entity, (EntityManager em, T entity2) -> em.persist(entity2));
     }
 
     public T update(T entity) {
-        return this.performTransaction(entity, (EntityManager em, T entity2) -> em.merge(entity2));
+        return this.performTransaction("update", entity, (EntityManager em, T entity2) -> em.merge(entity2));
     }
 
     public T delete(T entity) {
-        return this.performTransaction(entity, (EntityManager em, T entity2) -> {
+        return this.performTransaction("delete", entity, (EntityManager em, T entity2) -> {
             entity2 = em.find(this.classType, getPrimaryKey(entity2));
             if (entity2 == null) {
                 return;
@@ -377,23 +1925,388 @@ public abstract class AbstractJpaController<T> implements JpaController<T> {
     }
 
     protected T performTransaction(T entity, Transaction<T> transaction) {
+        return performTransaction("performTransaction", entity, transaction);
+    }
+
+    private T performTransaction(String operationName, T entity, Transaction<T> transaction) {
+        Operation operation = startOperation(operationName);
+        operation.rows(1);
+        UnitOfWork unitOfWork = currentUnitOfWork();
+        if (unitOfWork != null && unitOfWork.isTransactionActive()) {
+            try {
+                transaction.execute(unitOfWork.getEntityManager(), entity);
+                unitOfWork.afterCommit(() -> invalidateCaches(entity));
+                return entity;
+            } catch (Exception ex) {
+                operation.failed(ex);
+                throw ex;
+            } finally {
+                operation.finish();
+            }
+        }
+
         EntityManager em = null;
         try {
-            em = getEntityManager();
+            em = operation.open();
             em.getTransaction().begin();
             transaction.execute(em, entity);
             em.getTransaction().commit();
+            operation.committed(1);
+            invalidateCaches(entity);
             return entity;
         } catch (Exception ex) {
+            operation.failed(ex);
             if (em != null && em.getTransaction().isActive()) {
                 log.debug("Rolling back transaction because of exception: {}", ex.getMessage());
                 em.getTransaction().rollback();
+                operation.rolledBack(1);
             }
             throw ex;
         } finally {
-            if (em != null /* && em.isOpen() */) {
-                em.close();
+            operation.close(em);
+            operation.finish();
+        }
+    }
+
+    public List<BatchResult<T>> createAll(Collection<T> entities) {
+        return createAll(entities, this.batchSize);
+    }
+
+    public List<BatchResult<T>> createAll(Collection<T> entities, int batchSize) {
+        return this.performBatchTransaction("createAll", entities, batchSize, (EntityManager em, T entity2) -> em.persist(entity2));
+    }
+
+    public List<BatchResult<T>> updateAll(Collection<T> entities) {
+        return updateAll(entities, this.batchSize);
+    }
+
+    public List<BatchResult<T>> updateAll(Collection<T> entities, int batchSize) {
+        return this.performBatchTransaction("updateAll", entities, batchSize, (EntityManager em, T entity2) -> em.merge(entity2));
+    }
+
+    public List<BatchResult<T>> deleteAll(Collection<T> entities) {
+        return deleteAll(entities, this.batchSize);
+    }
+
+    public List<BatchResult<T>> deleteAll(Collection<T> entities, int batchSize) {
+        return this.performBatchTransaction("deleteAll", entities, batchSize, (EntityManager em, T entity2) -> {
+            entity2 = em.find(this.classType, getPrimaryKey(entity2));
+            if (entity2 == null) {
+                return;
+            }
+            em.remove(entity2);
+        });
+    }
+
+    /*
+     * Deletes the row with one DELETE statement without loading the entity first, so cascades, lifecycle
+     * callbacks and optimistic locking that delete(T) goes through do not apply.
+     */
+    public int deleteByPrimaryKey(Object id) {
+        Object primaryKey = convertToPrimaryKeyType(id);
+        return performBulk("deleteByPrimaryKey", (EntityManager em) -> {
+            SingularAttribute<? super T, ?> idAttribute = getIdAttribute(em);
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaDelete<T> cd = cb.createCriteriaDelete(this.classType);
+            Root<T> root = cd.from(this.classType);
+            cd.where(cb.equal(root.get(idAttribute.getName()), primaryKey));
+            return em.createQuery(cd);
+        });
+    }
+
+    public int deleteWhere(SingularAttribute<T, ?> field, Object value) {
+        return deleteWhere(field, value, false);
+    }
+
+    public int deleteWhere(SingularAttribute<T, ?> field, Object value, boolean ignoreCase) {
+        return deleteWhere((T) null, fieldPredicatesProvider(field, value, ignoreCase));
+    }
+
+    public int deleteWhere(T searchEntity) {
+        return deleteWhere(searchEntity, this.defaultPredicatesProvider);
+    }
+
+    /*
+     * Deletes every row matching the predicates with one DELETE statement. The provider is called with a
+     * null CriteriaQuery. Predicates that match everything are refused, a search entity with no values
+     * set must not wipe the table.
+     */
+    protected int deleteWhere(T searchEntity, PredicatesProvider<T> predicateProvider) {
+        return performBulk("deleteWhere", (EntityManager em) -> {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaDelete<T> cd = cb.createCriteriaDelete(this.classType);
+            Root<T> root = cd.from(this.classType);
+            cd.where(bulkPredicates(searchEntity, predicateProvider, cb, root));
+            return em.createQuery(cd);
+        });
+    }
+
+    public int updateWhere(SingularAttribute<T, ?> field, Object value, Map<SingularAttribute<T, ?>, Object> assignments) {
+        return updateWhere(field, value, false, assignments);
+    }
+
+    public int updateWhere(SingularAttribute<T, ?> field, Object value, boolean ignoreCase, Map<SingularAttribute<T, ?>, Object> assignments) {
+        return updateWhere((T) null, fieldPredicatesProvider(field, value, ignoreCase), assignments);
+    }
+
+    public int updateWhere(T searchEntity, Map<SingularAttribute<T, ?>, Object> assignments) {
+        return updateWhere(searchEntity, this.defaultPredicatesProvider, assignments);
+    }
+
+    /*
+     * Sets the assigned attributes on every row matching the predicates with one UPDATE statement, see
+     * deleteWhere for how the predicates are built. Version columns are not incremented.
+     */
+    protected int updateWhere(T searchEntity, PredicatesProvider<T> predicateProvider, Map<SingularAttribute<T, ?>, Object> assignments) {
+        if (assignments == null || assignments.isEmpty()) {
+            throw new IllegalArgumentException("At least one attribute must be assigned.");
+        }
+        return performBulk("updateWhere", (EntityManager em) -> {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaUpdate<T> cu = cb.createCriteriaUpdate(this.classType);
+            Root<T> root = cu.from(this.classType);
+            for (Map.Entry<SingularAttribute<T, ?>, Object> assignment : assignments.entrySet()) {
+                cu.set(assignment.getKey().getName(), assignment.getValue());
             }
+            cu.where(bulkPredicates(searchEntity, predicateProvider, cb, root));
+            return em.createQuery(cu);
+        });
+    }
+
+    /*
+     * a statement queued for JDBC batch writing reports 1 affected row, so bulk statements bypass the batch
+     */
+    private Query bulkStatement(Function<EntityManager, Query> statement, EntityManager em) {
+        Query q = statement.apply(em);
+        q.setHint(QueryHints.BATCH_WRITING, HintValues.FALSE);
+        return q;
+    }
+
+    private Predicate[] bulkPredicates(T searchEntity, PredicatesProvider<T> predicateProvider, CriteriaBuilder cb, Root<T> root) {
+        List<Predicate> predicates = predicateProvider.getPredicates(searchEntity, cb, null, root);
+        if (predicates == null || predicates.isEmpty()) {
+            throw new IllegalArgumentException("Refusing to run a bulk statement on " + this.classType.getSimpleName() + " without conditions.");
+        }
+        return predicates.toArray(new Predicate[predicates.size()]);
+    }
+
+    /*
+     * Runs the statement in its own transaction, or in the session's if one is active, and drops all
+     * cached entities and counts once it committed since the affected rows are not known.
+     */
+    private int performBulk(String operationName, Function<EntityManager, Query> statement) {
+        Operation operation = startOperation(operationName);
+        UnitOfWork unitOfWork = currentUnitOfWork();
+        if (unitOfWork != null && unitOfWork.isTransactionActive()) {
+            try {
+                int affected = bulkStatement(statement, unitOfWork.getEntityManager()).executeUpdate();
+                operation.rows(affected);
+                unitOfWork.afterCommit(() -> invalidateCaches());
+                return affected;
+            } catch (RuntimeException ex) {
+                operation.failed(ex);
+                throw ex;
+            } finally {
+                operation.finish();
+            }
+        }
+
+        EntityManager em = null;
+        try {
+            em = operation.open();
+            em.getTransaction().begin();
+            int affected = bulkStatement(statement, em).executeUpdate();
+            em.getTransaction().commit();
+            operation.committed(1);
+            operation.rows(affected);
+            invalidateCaches();
+            return affected;
+        } catch (RuntimeException ex) {
+            operation.failed(ex);
+            if (em != null && em.getTransaction().isActive()) {
+                log.debug("Rolling back bulk statement because of exception: {}", ex.getMessage());
+                em.getTransaction().rollback();
+                operation.rolledBack(1);
+            }
+            throw ex;
+        } finally {
+            operation.close(em);
+            operation.finish();
+        }
+    }
+
+    /*
+     * Applies the transaction to every entity, batchSize entities per transaction. The persistence
+     * context is flushed and cleared every flushInterval entities so it stays bounded, and a failed
+     * chunk is rolled back and reported without stopping the chunks after it.
+     */
+    protected List<BatchResult<T>> performBatchTransaction(Collection<T> entities, int batchSize, Transaction<T> transaction) {
+        return performBatchTransaction("performBatchTransaction", entities, batchSize, transaction);
+    }
+
+    private List<BatchResult<T>> performBatchTransaction(String operationName, Collection<T> entities, int batchSize, Transaction<T> transaction) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be greater than 0.");
+        }
+        List<BatchResult<T>> results = new ArrayList<>();
+        if (entities == null || entities.isEmpty()) {
+            return results;
+        }
+
+        Operation operation = startOperation(operationName);
+        operation.rows(entities.size());
+        UnitOfWork unitOfWork = currentUnitOfWork();
+        EntityManager em = null;
+        try {
+            em = operation.open();
+            checkBatchWriting(em);
+            List<T> chunk = new ArrayList<>(Math.min(batchSize, entities.size()));
+            int index = 0;
+            for (T entity : entities) {
+                chunk.add(entity);
+                index++;
+                if (chunk.size() == batchSize || index == entities.size()) {
+                    results.add(performChunk(operation, unitOfWork, em, results.size(), index - chunk.size(), chunk, transaction));
+                    chunk = new ArrayList<>(Math.min(batchSize, entities.size() - index));
+                }
+            }
+            return results;
+        } catch (RuntimeException ex) {
+            operation.failed(ex);
+            throw ex;
+        } finally {
+            operation.close(em);
+            operation.finish();
+        }
+    }
+
+    /*
+     * Inside a session the persistence context belongs to the session and is only flushed, never cleared,
+     * and inside its transaction the chunk is written without a transaction of its own.
+     */
+    private BatchResult<T> performChunk(Operation operation, UnitOfWork unitOfWork, EntityManager em, int chunkNumber, int firstIndex, List<T> chunk,
+            Transaction<T> transaction) {
+        if (unitOfWork != null && unitOfWork.isTransactionActive()) {
+            int count = 0;
+            for (T entity : chunk) {
+                transaction.execute(em, entity);
+                if (++count % this.flushInterval == 0) {
+                    em.flush();
+                }
+            }
+            for (T entity : chunk) {
+                unitOfWork.afterCommit(() -> invalidateCaches(entity));
+            }
+            return new BatchResult<>(chunkNumber, firstIndex, chunk, null);
+        }
+
+        try {
+            em.getTransaction().begin();
+            int count = 0;
+            for (T entity : chunk) {
+                transaction.execute(em, entity);
+                if (++count % this.flushInterval == 0) {
+                    em.flush();
+                    if (unitOfWork == null) {
+                        em.clear();
+                    }
+                }
+            }
+            em.getTransaction().commit();
+            operation.committed(1);
+            for (T entity : chunk) {
+                invalidateCaches(entity);
+            }
+            return new BatchResult<>(chunkNumber, firstIndex, chunk, null);
+        } catch (Exception ex) {
+            if (em.getTransaction().isActive()) {
+                log.debug("Rolling back batch chunk {} because of exception: {}", chunkNumber, ex.getMessage());
+                em.getTransaction().rollback();
+                operation.rolledBack(1);
+            }
+            if (operation.failure == null) {
+                operation.failed(ex);
+            }
+            return new BatchResult<>(chunkNumber, firstIndex, chunk, ex);
+        } finally {
+            if (unitOfWork == null) {
+                em.clear();
+            }
+        }
+    }
+
+    private void checkBatchWriting(EntityManager em) {
+        if (this.batchWritingChecked) {
+            return;
+        }
+        this.batchWritingChecked = true;
+        Object batchWriting = em.getEntityManagerFactory().getProperties().get(PersistenceUnitProperties.BATCH_WRITING);
+        if (batchWriting == null || "None".equalsIgnoreCase(batchWriting.toString())) {
+            log.warn("JDBC batch writing is not enabled for {}, bulk writes will send one statement per entity. Set {}=JDBC on the persistence unit.",
+                    this.classType.getSimpleName(), PersistenceUnitProperties.BATCH_WRITING);
+        }
+    }
+
+    /*
+     * drop the entity from the controller caches, detach the reads in flight and start the read-your-writes
+     * window, called after every committed write
+     */
+    protected void invalidateCaches(T entity) {
+        written();
+        this.cacheGeneration.incrementAndGet();
+        CountCache counts = this.countCache;
+        if (counts != null) {
+            counts.invalidateAll();
+        }
+        SingleFlight flight = this.singleFlight;
+        if (flight != null) {
+            flight.invalidateAll();
+        }
+        EntityCache<T> cache = this.entityCache;
+        if (cache == null) {
+            return;
+        }
+        Object primaryKey = getPrimaryKey(entity);
+        if (primaryKey != null) {
+            cache.invalidate(convertToPrimaryKeyType(primaryKey));
+        }
+    }
+
+    /*
+     * drop everything from the controller caches, detach the reads in flight and start the read-your-writes
+     * window, called after writes that cannot name their entities
+     */
+    protected void invalidateCaches() {
+        written();
+        this.cacheGeneration.incrementAndGet();
+        CountCache counts = this.countCache;
+        if (counts != null) {
+            counts.invalidateAll();
+        }
+        SingleFlight flight = this.singleFlight;
+        if (flight != null) {
+            flight.invalidateAll();
+        }
+        EntityCache<T> cache = this.entityCache;
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    private void written() {
+        ReadReplicas replicas = this.readReplicas;
+        if (replicas != null) {
+            replicas.written();
+        }
+    }
+
+    /*
+     * only cache what was loaded if no write was committed meanwhile, otherwise a slow read could put
+     * back an entity that was just invalidated
+     */
+    private void cacheLoaded(EntityCache<T> cache, long generation, Object primaryKey, T entity) {
+        if (cache != null && entity != null && this.cacheGeneration.get() == generation) {
+            cache.put(primaryKey, entity);
         }
     }
 
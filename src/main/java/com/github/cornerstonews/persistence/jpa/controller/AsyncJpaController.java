@@ -0,0 +1,413 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.controller;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import javax.persistence.Tuple;
+import javax.persistence.metamodel.SingularAttribute;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/*
+ * Runs the calls of a JpaController off the caller's thread and returns CompletableFutures. Work
+ * runs on virtual threads when the JDK has them and on a fixed pool of maxConcurrency threads
+ * otherwise, or on the given executor. At most maxConcurrency calls run at once, set it to the
+ * connection pool size so a burst of callers waits here instead of on the pool. Read replicas pin
+ * reads after writes per thread, which does not carry over to these threads; submit from within a
+ * ReadYourWritesScope, which every call then runs in, for reads to see the caller's earlier writes.
+ */
+public class AsyncJpaController<T> implements AutoCloseable {
+
+    private static final Logger log = LogManager.getLogger(AsyncJpaController.class);
+
+    private final JpaController<T> controller;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final Semaphore permits;
+    private final int maxConcurrency;
+
+    public AsyncJpaController(JpaController<T> controller, int maxConcurrency) {
+        this(controller, maxConcurrency, null);
+    }
+
+    /*
+     * executor may be null to use virtual threads or a fixed pool, a given executor is not shut down by close()
+     */
+    public AsyncJpaController(JpaController<T> controller, int maxConcurrency, ExecutorService executor) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("Max concurrency must be greater than 0.");
+        }
+        this.controller = controller;
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new Semaphore(maxConcurrency, true);
+        this.ownsExecutor = executor == null;
+        this.executor = executor != null ? executor : createDefaultExecutor(maxConcurrency);
+    }
+
+    private static ExecutorService createDefaultExecutor(int maxConcurrency) {
+        try {
+            Method virtualThreads = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtualThreads.invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            log.debug("Virtual threads are not available, using a pool of {} threads: {}", maxConcurrency, ex.getMessage());
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = (Runnable runnable) -> {
+            Thread thread = new Thread(runnable, "jpa-async-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory);
+    }
+
+    public JpaController<T> getController() {
+        return controller;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /*
+     * number of calls currently holding a permit
+     */
+    public int getActiveCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+
+    /*
+     * run any work against the wrapped controller under the same concurrency limit
+     */
+    public <R> CompletableFuture<R> supply(Function<? super JpaController<T>, R> work) {
+        ReadYourWritesScope scope = ReadYourWritesScope.current();
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a free connection slot.", ex);
+            }
+            try {
+                return scope == null ? work.apply(controller) : scope.supply(() -> work.apply(controller));
+            } finally {
+                permits.release();
+            }
+        }, executor);
+    }
+
+    public CompletableFuture<List<T>> getAll() {
+        return supply(c -> c.getAll());
+    }
+
+    public CompletableFuture<List<T>> get(int startPosition, int maxResults) {
+        return supply(c -> c.get(startPosition, maxResults));
+    }
+
+    public CompletableFuture<List<T>> get(int startPosition, int maxResults, String orderBy, boolean desc) {
+        return supply(c -> c.get(startPosition, maxResults, orderBy, desc));
+    }
+
+    public CompletableFuture<List<T>> get(int startPosition, int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc) {
+        return supply(c -> c.get(startPosition, maxResults, orderBy, orderByIgnoreCase, desc));
+    }
+
+    public CompletableFuture<Long> getCount() {
+        return supply(c -> c.getCount());
+    }
+
+    public CompletableFuture<T> find(T entity) {
+        return supply(c -> c.find(entity));
+    }
+
+    public CompletableFuture<T> findByPrimaryKey(Object id) {
+        return supply(c -> c.findByPrimaryKey(id));
+    }
+
+    public CompletableFuture<Map<Object, T>> findByPrimaryKeys(Collection<?> ids) {
+        return supply(c -> c.findByPrimaryKeys(ids));
+    }
+
+    public CompletableFuture<List<T>> findBy(T searchEntity) {
+        return supply(c -> c.findBy(searchEntity));
+    }
+
+    public CompletableFuture<List<T>> findBy(T searchEntity, int firstResult, int maxResults) {
+        return supply(c -> c.findBy(searchEntity, firstResult, maxResults));
+    }
+
+    public CompletableFuture<List<T>> findBy(T searchEntity, int firstResult, int maxResults, String orderBy, boolean desc) {
+        return supply(c -> c.findBy(searchEntity, firstResult, maxResults, orderBy, desc));
+    }
+
+    public CompletableFuture<List<T>> findBy(T searchEntity, int firstResult, int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc) {
+        return supply(c -> c.findBy(searchEntity, firstResult, maxResults, orderBy, orderByIgnoreCase, desc));
+    }
+
+    public CompletableFuture<Long> findByCount(T searchEntity) {
+        return supply(c -> c.findByCount(searchEntity));
+    }
+
+    public CompletableFuture<List<T>> findBy(SingularAttribute<T, ?> field, Object value) {
+        return supply(c -> c.findBy(field, value));
+    }
+
+    public CompletableFuture<List<T>> findBy(SingularAttribute<T, ?> field, Object value, boolean ignoreCase) {
+        return supply(c -> c.findBy(field, value, ignoreCase));
+    }
+
+    public CompletableFuture<List<T>> findBy(SingularAttribute<T, ?> field, Object value, int firstResult, int maxResults) {
+        return supply(c -> c.findBy(field, value, firstResult, maxResults));
+    }
+
+    public CompletableFuture<List<T>> findBy(SingularAttribute<T, ?> field, Object value, boolean ignoreCase, int firstResult, int maxResults) {
+        return supply(c -> c.findBy(field, value, ignoreCase, firstResult, maxResults));
+    }
+
+    public CompletableFuture<List<T>> findBy(SingularAttribute<T, ?> field, Object value, int firstResult, int maxResults, String orderBy, boolean desc) {
+        return supply(c -> c.findBy(field, value, firstResult, maxResults, orderBy, desc));
+    }
+
+    public CompletableFuture<List<T>> findBy(SingularAttribute<T, ?> field, Object value, boolean ignoreCase, int firstResult, int maxResults, String orderBy, boolean desc) {
+        return supply(c -> c.findBy(field, value, ignoreCase, firstResult, maxResults, orderBy, desc));
+    }
+
+    public CompletableFuture<List<T>> findBy(SingularAttribute<T, ?> field, Object value, int firstResult, int maxResults, String orderBy, boolean orderByIgnoreCase,
+            boolean desc) {
+        return supply(c -> c.findBy(field, value, firstResult, maxResults, orderBy, orderByIgnoreCase, desc));
+    }
+
+    public CompletableFuture<List<T>> findBy(SingularAttribute<T, ?> field, Object value, boolean ignoreCase, int firstResult, int maxResults, String orderBy,
+            boolean orderByIgnoreCase, boolean desc) {
+        return supply(c -> c.findBy(field, value, ignoreCase, firstResult, maxResults, orderBy, orderByIgnoreCase, desc));
+    }
+
+    public CompletableFuture<Long> findByCount(SingularAttribute<T, ?> field, Object value) {
+        return supply(c -> c.findByCount(field, value));
+    }
+
+    public CompletableFuture<List<Tuple>> getProjection(List<SingularAttribute<T, ?>> attributes) {
+        return supply(c -> c.getProjection(attributes));
+    }
+
+    public CompletableFuture<List<Tuple>> getProjection(List<SingularAttribute<T, ?>> attributes, int firstResult, int maxResults, String orderBy,
+            boolean orderByIgnoreCase, boolean desc) {
+        return supply(c -> c.getProjection(attributes, firstResult, maxResults, orderBy, orderByIgnoreCase, desc));
+    }
+
+    public <D> CompletableFuture<List<D>> getProjection(Class<D> resultType, List<SingularAttribute<T, ?>> attributes) {
+        return supply(c -> c.getProjection(resultType, attributes));
+    }
+
+    public <D> CompletableFuture<List<D>> getProjection(Class<D> resultType, List<SingularAttribute<T, ?>> attributes, int firstResult, int maxResults, String orderBy,
+            boolean orderByIgnoreCase, boolean desc) {
+        return supply(c -> c.getProjection(resultType, attributes, firstResult, maxResults, orderBy, orderByIgnoreCase, desc));
+    }
+
+    public CompletableFuture<List<Tuple>> findProjectionBy(T searchEntity, List<SingularAttribute<T, ?>> attributes) {
+        return supply(c -> c.findProjectionBy(searchEntity, attributes));
+    }
+
+    public CompletableFuture<List<Tuple>> findProjectionBy(T searchEntity, List<SingularAttribute<T, ?>> attributes, int firstResult, int maxResults, String orderBy,
+            boolean orderByIgnoreCase, boolean desc) {
+        return supply(c -> c.findProjectionBy(searchEntity, attributes, firstResult, maxResults, orderBy, orderByIgnoreCase, desc));
+    }
+
+    public <D> CompletableFuture<List<D>> findProjectionBy(Class<D> resultType, T searchEntity, List<SingularAttribute<T, ?>> attributes) {
+        return supply(c -> c.findProjectionBy(resultType, searchEntity, attributes));
+    }
+
+    public <D> CompletableFuture<List<D>> findProjectionBy(Class<D> resultType, T searchEntity, List<SingularAttribute<T, ?>> attributes, int firstResult,
+            int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc) {
+        return supply(c -> c.findProjectionBy(resultType, searchEntity, attributes, firstResult, maxResults, orderBy, orderByIgnoreCase, desc));
+    }
+
+    public CompletableFuture<List<Tuple>> findProjectionBy(SingularAttribute<T, ?> field, Object value, List<SingularAttribute<T, ?>> attributes) {
+        return supply(c -> c.findProjectionBy(field, value, attributes));
+    }
+
+    public CompletableFuture<List<Tuple>> findProjectionBy(SingularAttribute<T, ?> field, Object value, boolean ignoreCase, List<SingularAttribute<T, ?>> attributes,
+            int firstResult, int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc) {
+        return supply(c -> c.findProjectionBy(field, value, ignoreCase, attributes, firstResult, maxResults, orderBy, orderByIgnoreCase, desc));
+    }
+
+    public <D> CompletableFuture<List<D>> findProjectionBy(Class<D> resultType, SingularAttribute<T, ?> field, Object value, List<SingularAttribute<T, ?>> attributes) {
+        return supply(c -> c.findProjectionBy(resultType, field, value, attributes));
+    }
+
+    public <D> CompletableFuture<List<D>> findProjectionBy(Class<D> resultType, SingularAttribute<T, ?> field, Object value, boolean ignoreCase,
+            List<SingularAttribute<T, ?>> attributes, int firstResult, int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc) {
+        return supply(c -> c.findProjectionBy(resultType, field, value, ignoreCase, attributes, firstResult, maxResults, orderBy, orderByIgnoreCase, desc));
+    }
+
+    public CompletableFuture<ResultPage<T>> getPage(int firstResult, int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc, CountMode countMode) {
+        return supply(c -> c.getPage(firstResult, maxResults, orderBy, orderByIgnoreCase, desc, countMode));
+    }
+
+    public CompletableFuture<ResultPage<T>> findPage(T searchEntity, int firstResult, int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc,
+            CountMode countMode) {
+        return supply(c -> c.findPage(searchEntity, firstResult, maxResults, orderBy, orderByIgnoreCase, desc, countMode));
+    }
+
+    public CompletableFuture<ResultPage<T>> findPage(SingularAttribute<T, ?> field, Object value, boolean ignoreCase, int firstResult, int maxResults, String orderBy,
+            boolean orderByIgnoreCase, boolean desc, CountMode countMode) {
+        return supply(c -> c.findPage(field, value, ignoreCase, firstResult, maxResults, orderBy, orderByIgnoreCase, desc, countMode));
+    }
+
+    public CompletableFuture<KeysetPage<T>> getAfter(KeysetCursor after, int maxResults) {
+        return supply(c -> c.getAfter(after, maxResults));
+    }
+
+    public CompletableFuture<KeysetPage<T>> getAfter(KeysetCursor after, int maxResults, String orderBy, boolean desc) {
+        return supply(c -> c.getAfter(after, maxResults, orderBy, desc));
+    }
+
+    public CompletableFuture<KeysetPage<T>> getAfter(KeysetCursor after, int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc) {
+        return supply(c -> c.getAfter(after, maxResults, orderBy, orderByIgnoreCase, desc));
+    }
+
+    public CompletableFuture<KeysetPage<T>> findByAfter(T searchEntity, KeysetCursor after, int maxResults) {
+        return supply(c -> c.findByAfter(searchEntity, after, maxResults));
+    }
+
+    public CompletableFuture<KeysetPage<T>> findByAfter(T searchEntity, KeysetCursor after, int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc) {
+        return supply(c -> c.findByAfter(searchEntity, after, maxResults, orderBy, orderByIgnoreCase, desc));
+    }
+
+    public CompletableFuture<KeysetPage<T>> findByAfter(SingularAttribute<T, ?> field, Object value, KeysetCursor after, int maxResults) {
+        return supply(c -> c.findByAfter(field, value, after, maxResults));
+    }
+
+    public CompletableFuture<KeysetPage<T>> findByAfter(SingularAttribute<T, ?> field, Object value, boolean ignoreCase, KeysetCursor after, int maxResults, String orderBy,
+            boolean orderByIgnoreCase, boolean desc) {
+        return supply(c -> c.findByAfter(field, value, ignoreCase, after, maxResults, orderBy, orderByIgnoreCase, desc));
+    }
+
+    public CompletableFuture<List<T>> getAll(FetchPlan fetchPlan) {
+        return supply(c -> c.getAll(fetchPlan));
+    }
+
+    public CompletableFuture<List<T>> get(int startPosition, int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc, FetchPlan fetchPlan) {
+        return supply(c -> c.get(startPosition, maxResults, orderBy, orderByIgnoreCase, desc, fetchPlan));
+    }
+
+    public CompletableFuture<T> findByPrimaryKey(Object id, FetchPlan fetchPlan) {
+        return supply(c -> c.findByPrimaryKey(id, fetchPlan));
+    }
+
+    public CompletableFuture<Map<Object, T>> findByPrimaryKeys(Collection<?> ids, FetchPlan fetchPlan) {
+        return supply(c -> c.findByPrimaryKeys(ids, fetchPlan));
+    }
+
+    public CompletableFuture<List<T>> findBy(T searchEntity, FetchPlan fetchPlan) {
+        return supply(c -> c.findBy(searchEntity, fetchPlan));
+    }
+
+    public CompletableFuture<List<T>> findBy(T searchEntity, int firstResult, int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc,
+            FetchPlan fetchPlan) {
+        return supply(c -> c.findBy(searchEntity, firstResult, maxResults, orderBy, orderByIgnoreCase, desc, fetchPlan));
+    }
+
+    public CompletableFuture<List<T>> findBy(SingularAttribute<T, ?> field, Object value, FetchPlan fetchPlan) {
+        return supply(c -> c.findBy(field, value, fetchPlan));
+    }
+
+    public CompletableFuture<List<T>> findBy(SingularAttribute<T, ?> field, Object value, boolean ignoreCase, int firstResult, int maxResults, String orderBy,
+            boolean orderByIgnoreCase, boolean desc, FetchPlan fetchPlan) {
+        return supply(c -> c.findBy(field, value, ignoreCase, firstResult, maxResults, orderBy, orderByIgnoreCase, desc, fetchPlan));
+    }
+
+    public CompletableFuture<T> create(T entity) {
+        return supply(c -> c.create(entity));
+    }
+
+    public CompletableFuture<T> update(T entity) {
+        return supply(c -> c.update(entity));
+    }
+
+    public CompletableFuture<T> delete(T entity) {
+        return supply(c -> c.delete(entity));
+    }
+
+    public CompletableFuture<List<BatchResult<T>>> createAll(Collection<T> entities) {
+        return supply(c -> c.createAll(entities));
+    }
+
+    public CompletableFuture<List<BatchResult<T>>> updateAll(Collection<T> entities) {
+        return supply(c -> c.updateAll(entities));
+    }
+
+    public CompletableFuture<List<BatchResult<T>>> deleteAll(Collection<T> entities) {
+        return supply(c -> c.deleteAll(entities));
+    }
+
+    public CompletableFuture<Integer> deleteByPrimaryKey(Object id) {
+        return supply(c -> c.deleteByPrimaryKey(id));
+    }
+
+    public CompletableFuture<Integer> deleteWhere(SingularAttribute<T, ?> field, Object value) {
+        return supply(c -> c.deleteWhere(field, value));
+    }
+
+    public CompletableFuture<Integer> deleteWhere(SingularAttribute<T, ?> field, Object value, boolean ignoreCase) {
+        return supply(c -> c.deleteWhere(field, value, ignoreCase));
+    }
+
+    public CompletableFuture<Integer> deleteWhere(T searchEntity) {
+        return supply(c -> c.deleteWhere(searchEntity));
+    }
+
+    public CompletableFuture<Integer> updateWhere(SingularAttribute<T, ?> field, Object value, Map<SingularAttribute<T, ?>, Object> assignments) {
+        return supply(c -> c.updateWhere(field, value, assignments));
+    }
+
+    public CompletableFuture<Integer> updateWhere(SingularAttribute<T, ?> field, Object value, boolean ignoreCase, Map<SingularAttribute<T, ?>, Object> assignments) {
+        return supply(c -> c.updateWhere(field, value, ignoreCase, assignments));
+    }
+
+    public CompletableFuture<Integer> updateWhere(T searchEntity, Map<SingularAttribute<T, ?>, Object> assignments) {
+        return supply(c -> c.updateWhere(searchEntity, assignments));
+    }
+
+    /*
+     * shuts down the executor if it was created by this controller, running calls are allowed to finish
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+}
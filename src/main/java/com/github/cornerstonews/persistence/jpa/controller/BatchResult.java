@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.controller;
+
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Outcome of one chunk of a bulk createAll/updateAll/deleteAll call. Every chunk
+ * runs in its own transaction, so a failed chunk is rolled back as a whole while
+ * the chunks before and after it are unaffected.
+ */
+public class BatchResult<T> {
+
+    private final int chunk;
+    private final int firstIndex;
+    private final List<T> entities;
+    private final Exception exception;
+
+    public BatchResult(int chunk, int firstIndex, List<T> entities, Exception exception) {
+        this.chunk = chunk;
+        this.firstIndex = firstIndex;
+        this.entities = Collections.unmodifiableList(entities);
+        this.exception = exception;
+    }
+
+    public int getChunk() {
+        return chunk;
+    }
+
+    /*
+     * position of the first entity of this chunk in the submitted collection
+     */
+    public int getFirstIndex() {
+        return firstIndex;
+    }
+
+    public int getSize() {
+        return entities.size();
+    }
+
+    public List<T> getEntities() {
+        return entities;
+    }
+
+    public boolean isSuccessful() {
+        return exception == null;
+    }
+
+    public Exception getException() {
+        return exception;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult [chunk=" + chunk + ", firstIndex=" + firstIndex + ", size=" + entities.size() + ", successful=" + isSuccessful() + "]";
+    }
+}
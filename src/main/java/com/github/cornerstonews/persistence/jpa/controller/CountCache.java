@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.controller;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Short lived cache of count query results keyed by entity, persistence unit, query shape and parameter
+ * values. Counts served from it can be up to one time to live old; a controller also clears it on every
+ * write it makes, including the counts of other controllers sharing it.
+ */
+public class CountCache {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LinkedHashMap<Object, CountEntry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public CountCache(int maxSize, long ttl, TimeUnit unit) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Max size must be greater than 0.");
+        }
+        if (ttl < 1) {
+            throw new IllegalArgumentException("Time to live must be greater than 0.");
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.entries = new LinkedHashMap<Object, CountEntry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, CountEntry> eldest) {
+                return size() > CountCache.this.maxSize;
+            }
+        };
+    }
+
+    public synchronized Long get(Object key) {
+        CountEntry entry = entries.get(key);
+        if (entry != null && System.nanoTime() - entry.expiresAt >= 0) {
+            entries.remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.count;
+    }
+
+    public synchronized void put(Object key, Long count) {
+        if (key == null || count == null) {
+            return;
+        }
+        entries.put(key, new CountEntry(count, System.nanoTime() + ttlNanos));
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public double getHitRatio() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0.0 : (double) hitCount / total;
+    }
+
+    @Override
+    public String toString() {
+        return "CountCache [size=" + getSize() + ", maxSize=" + maxSize + ", hits=" + hits.get() + ", misses=" + misses.get() + "]";
+    }
+
+    private static class CountEntry {
+        private final Long count;
+        private final long expiresAt;
+
+        CountEntry(Long count, long expiresAt) {
+            this.count = count;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
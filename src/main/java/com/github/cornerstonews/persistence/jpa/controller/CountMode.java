@@ -0,0 +1,35 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.controller;
+
+/*
+ * How findPage/getPage work out the total of a page.
+ */
+public enum CountMode {
+    /*
+     * run the count query every time, refreshing the count cache if one is set
+     */
+    EXACT,
+    /*
+     * serve the count from the count cache while it is fresh, counting on a miss
+     */
+    CACHED,
+    /*
+     * skip the count, the page only reports whether there is a next page
+     */
+    NONE
+}
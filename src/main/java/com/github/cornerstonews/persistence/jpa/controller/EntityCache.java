@@ -0,0 +1,33 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.controller;
+
+/*
+ * In-process cache used by AbstractJpaController.findByPrimaryKey. Entries are keyed by the
+ * converted primary key and must be detached; the controller invalidates entries on every write.
+ * Callers may modify what get returns, so implementations hand out copies unless documented otherwise.
+ */
+public interface EntityCache<T> {
+
+    public T get(Object primaryKey);
+
+    public void put(Object primaryKey, T entity);
+
+    public void invalidate(Object primaryKey);
+
+    public void invalidateAll();
+}
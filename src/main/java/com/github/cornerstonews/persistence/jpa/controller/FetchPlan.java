@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import javax.persistence.AttributeNode;
+import javax.persistence.EntityGraph;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import javax.persistence.Subgraph;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.ManagedType;
+import javax.persistence.metamodel.Metamodel;
+
+import org.eclipse.persistence.annotations.BatchFetchType;
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.jpa.JpaEntityManager;
+import org.eclipse.persistence.jpa.JpaQuery;
+import org.eclipse.persistence.queries.LoadGroup;
+
+/*
+ * Associations to load together with the entities of a read: the associations of a named entity graph,
+ * attributes fetched with a left join in the same query, and attributes loaded afterwards with one
+ * IN query per attribute for all entities of the result. Paths may be nested with dots, for example
+ * "lines.product". Join fetching collections multiplies the rows the database returns, which makes
+ * firstResult/maxResults count rows rather than entities; batch fetch collections of paged reads.
+ */
+public final class FetchPlan {
+
+    private static final String ALIAS = "e.";
+
+    private final String entityGraph;
+    private final List<String> joinFetch;
+    private final List<String> batchFetch;
+
+    private FetchPlan(String entityGraph, List<String> joinFetch, List<String> batchFetch) {
+        this.entityGraph = entityGraph;
+        this.joinFetch = Collections.unmodifiableList(joinFetch);
+        this.batchFetch = Collections.unmodifiableList(batchFetch);
+    }
+
+    public static FetchPlan entityGraph(String name) {
+        return new FetchPlan(name, new ArrayList<>(), new ArrayList<>());
+    }
+
+    public static FetchPlan joinFetch(String... paths) {
+        return entityGraph(null).withJoinFetch(paths);
+    }
+
+    public static FetchPlan joinFetch(Attribute<?, ?>... attributes) {
+        return entityGraph(null).withJoinFetch(attributes);
+    }
+
+    public static FetchPlan batchFetch(String... paths) {
+        return entityGraph(null).withBatchFetch(paths);
+    }
+
+    public static FetchPlan batchFetch(Attribute<?, ?>... attributes) {
+        return entityGraph(null).withBatchFetch(attributes);
+    }
+
+    public String getEntityGraph() {
+        return entityGraph;
+    }
+
+    public List<String> getJoinFetch() {
+        return joinFetch;
+    }
+
+    public List<String> getBatchFetch() {
+        return batchFetch;
+    }
+
+    public FetchPlan withEntityGraph(String name) {
+        return new FetchPlan(name, new ArrayList<>(this.joinFetch), new ArrayList<>(this.batchFetch));
+    }
+
+    public FetchPlan withJoinFetch(String... paths) {
+        List<String> joinFetch = new ArrayList<>(this.joinFetch);
+        Collections.addAll(joinFetch, paths);
+        return new FetchPlan(this.entityGraph, joinFetch, new ArrayList<>(this.batchFetch));
+    }
+
+    public FetchPlan withJoinFetch(Attribute<?, ?>... attributes) {
+        return withJoinFetch(names(attributes));
+    }
+
+    public FetchPlan withBatchFetch(String... paths) {
+        List<String> batchFetch = new ArrayList<>(this.batchFetch);
+        Collections.addAll(batchFetch, paths);
+        return new FetchPlan(this.entityGraph, new ArrayList<>(this.joinFetch), batchFetch);
+    }
+
+    public FetchPlan withBatchFetch(Attribute<?, ?>... attributes) {
+        return withBatchFetch(names(attributes));
+    }
+
+    private static String[] names(Attribute<?, ?>... attributes) {
+        String[] names = new String[attributes.length];
+        for (int i = 0; i < attributes.length; i++) {
+            names[i] = attributes[i].getName();
+        }
+        return names;
+    }
+
+    /*
+     * EclipseLink fetch hints take a path starting with an alias, which it ignores for criteria queries.
+     * EclipseLink applies a load graph by loading the associations one entity at a time, so the
+     * associations of the entity graph are batch fetched instead.
+     */
+    void apply(Query query, Class<?> entityType) {
+        for (String path : joinFetch) {
+            query.setHint(QueryHints.LEFT_FETCH, ALIAS + path);
+        }
+        List<String> batchPaths = batchPaths(query.unwrap(JpaQuery.class).getEntityManager(), entityType);
+        if (!batchPaths.isEmpty()) {
+            query.setHint(QueryHints.BATCH_TYPE, BatchFetchType.IN);
+        }
+        for (String path : batchPaths) {
+            query.setHint(QueryHints.BATCH, ALIAS + path);
+        }
+    }
+
+    /*
+     * batch fetched associations are only read on first access, load them while the entity manager is open
+     */
+    void load(EntityManager em, Class<?> entityType, List<?> entities) {
+        List<String> batchPaths = batchPaths(em, entityType);
+        if (batchPaths.isEmpty() || entities.isEmpty()) {
+            return;
+        }
+        LoadGroup group = new LoadGroup();
+        for (String path : batchPaths) {
+            group.addAttribute(path);
+        }
+        em.unwrap(JpaEntityManager.class).load(entities, group);
+    }
+
+    private List<String> batchPaths(EntityManager em, Class<?> entityType) {
+        List<String> paths = new ArrayList<>(batchFetch);
+        if (entityGraph != null) {
+            EntityGraph<?> graph = em.getEntityGraph(entityGraph);
+            associationPaths(em.getMetamodel(), entityType, graph.getAttributeNodes(), "", paths);
+        }
+        paths.removeAll(joinFetch);
+        return paths;
+    }
+
+    private static void associationPaths(Metamodel metamodel, Class<?> type, List<AttributeNode<?>> nodes, String prefix, List<String> paths) {
+        ManagedType<?> managedType = metamodel.managedType(type);
+        for (AttributeNode<?> node : nodes) {
+            Attribute<?, ?> attribute = managedType.getAttribute(node.getAttributeName());
+            if (!attribute.isAssociation()) {
+                continue;
+            }
+            String path = prefix + attribute.getName();
+            if (!paths.contains(path)) {
+                paths.add(path);
+            }
+            for (Subgraph<?> subgraph : node.getSubgraphs().values()) {
+                associationPaths(metamodel, subgraph.getClassType(), subgraph.getAttributeNodes(), path + ".", paths);
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof FetchPlan)) {
+            return false;
+        }
+        FetchPlan other = (FetchPlan) obj;
+        return Objects.equals(entityGraph, other.entityGraph) && joinFetch.equals(other.joinFetch) && batchFetch.equals(other.batchFetch);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(entityGraph, joinFetch, batchFetch);
+    }
+
+    @Override
+    public String toString() {
+        return "FetchPlan [entityGraph=" + entityGraph + ", joinFetch=" + joinFetch + ", batchFetch=" + batchFetch + "]";
+    }
+}
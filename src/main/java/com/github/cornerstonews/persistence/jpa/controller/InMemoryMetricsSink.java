@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.controller;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*
+ * MetricsSink keeping OperationStatistics per operation shape in memory. Once maxShapes shapes are
+ * kept, operations of new shapes are counted together per entity and operation as "(other shapes)".
+ */
+public class InMemoryMetricsSink implements MetricsSink {
+
+    private final int maxShapes;
+    private final ConcurrentMap<String, OperationStatistics> statistics = new ConcurrentHashMap<>();
+
+    public InMemoryMetricsSink() {
+        this(1000);
+    }
+
+    public InMemoryMetricsSink(int maxShapes) {
+        if (maxShapes < 1) {
+            throw new IllegalArgumentException("Max shapes must be greater than 0.");
+        }
+        this.maxShapes = maxShapes;
+    }
+
+    @Override
+    public void record(OperationMetrics metrics) {
+        String shapeKey = metrics.getShapeKey();
+        OperationStatistics operationStatistics = statistics.get(shapeKey);
+        if (operationStatistics == null) {
+            if (statistics.size() >= maxShapes) {
+                shapeKey = metrics.getEntityName() + "." + metrics.getOperation() + " (other shapes)";
+            }
+            operationStatistics = statistics.computeIfAbsent(shapeKey, OperationStatistics::new);
+        }
+        operationStatistics.record(metrics);
+    }
+
+    public int getMaxShapes() {
+        return maxShapes;
+    }
+
+    /*
+     * statistics keyed by shape key, sorted by key
+     */
+    public Map<String, OperationStatistics> getStatistics() {
+        return Collections.unmodifiableMap(new TreeMap<>(statistics));
+    }
+
+    public OperationStatistics getStatistics(String shapeKey) {
+        return statistics.get(shapeKey);
+    }
+
+    public void reset() {
+        statistics.clear();
+    }
+}
@@ -16,8 +16,11 @@
  */
 package com.github.cornerstonews.persistence.jpa.controller;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
+import javax.persistence.Tuple;
 import javax.persistence.metamodel.SingularAttribute;
 
 public interface JpaController<T> {
@@ -48,6 +51,11 @@ public interface JpaController<T> {
     public T find(T entity);
     
     public T findByPrimaryKey(Object id);
+
+    /*
+     * load entities for many ids at once, keyed by converted primary key, missing ids are absent
+     */
+    public Map<Object, T> findByPrimaryKeys(Collection<?> ids);
     
     public List<T> findBy(T searchEntity);
     
@@ -76,10 +84,123 @@ public interface JpaController<T> {
     public List<T> findBy(SingularAttribute<T, ?> field, Object value, boolean ignoreCase, int firstResult, int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc);
     
     public Long findByCount(SingularAttribute<T, ?> field, Object value);
+
+    /*
+     * projections selecting only the given attributes, as tuples whose elements are aliased by attribute
+     * name or as resultType instances built through its constructor taking the attributes in order
+     */
+    public List<Tuple> getProjection(List<SingularAttribute<T, ?>> attributes);
+
+    public List<Tuple> getProjection(List<SingularAttribute<T, ?>> attributes, int firstResult, int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc);
+
+    public <D> List<D> getProjection(Class<D> resultType, List<SingularAttribute<T, ?>> attributes);
+
+    public <D> List<D> getProjection(Class<D> resultType, List<SingularAttribute<T, ?>> attributes, int firstResult, int maxResults, String orderBy,
+            boolean orderByIgnoreCase, boolean desc);
+
+    public List<Tuple> findProjectionBy(T searchEntity, List<SingularAttribute<T, ?>> attributes);
+
+    public List<Tuple> findProjectionBy(T searchEntity, List<SingularAttribute<T, ?>> attributes, int firstResult, int maxResults, String orderBy,
+            boolean orderByIgnoreCase, boolean desc);
+
+    public <D> List<D> findProjectionBy(Class<D> resultType, T searchEntity, List<SingularAttribute<T, ?>> attributes);
+
+    public <D> List<D> findProjectionBy(Class<D> resultType, T searchEntity, List<SingularAttribute<T, ?>> attributes, int firstResult, int maxResults, String orderBy,
+            boolean orderByIgnoreCase, boolean desc);
+
+    public List<Tuple> findProjectionBy(SingularAttribute<T, ?> field, Object value, List<SingularAttribute<T, ?>> attributes);
+
+    public List<Tuple> findProjectionBy(SingularAttribute<T, ?> field, Object value, boolean ignoreCase, List<SingularAttribute<T, ?>> attributes, int firstResult,
+            int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc);
+
+    public <D> List<D> findProjectionBy(Class<D> resultType, SingularAttribute<T, ?> field, Object value, List<SingularAttribute<T, ?>> attributes);
+
+    public <D> List<D> findProjectionBy(Class<D> resultType, SingularAttribute<T, ?> field, Object value, boolean ignoreCase, List<SingularAttribute<T, ?>> attributes,
+            int firstResult, int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc);
+
+    /*
+     * page plus total in one call, see CountMode for how the total is computed
+     */
+    public ResultPage<T> getPage(int firstResult, int maxResults);
+
+    public ResultPage<T> getPage(int firstResult, int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc, CountMode countMode);
+
+    public ResultPage<T> findPage(T searchEntity, int firstResult, int maxResults);
+
+    public ResultPage<T> findPage(T searchEntity, int firstResult, int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc, CountMode countMode);
+
+    public ResultPage<T> findPage(SingularAttribute<T, ?> field, Object value, int firstResult, int maxResults);
+
+    public ResultPage<T> findPage(SingularAttribute<T, ?> field, Object value, boolean ignoreCase, int firstResult, int maxResults, String orderBy, boolean orderByIgnoreCase,
+            boolean desc, CountMode countMode);
+
+    /*
+     * keyset (seek) paging, pass the cursor of the previous page or null for the first page
+     */
+    public KeysetPage<T> getAfter(KeysetCursor after, int maxResults);
+
+    public KeysetPage<T> getAfter(KeysetCursor after, int maxResults, String orderBy, boolean desc);
+
+    public KeysetPage<T> getAfter(KeysetCursor after, int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc);
+
+    public KeysetPage<T> findByAfter(T searchEntity, KeysetCursor after, int maxResults);
+
+    public KeysetPage<T> findByAfter(T searchEntity, KeysetCursor after, int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc);
+
+    public KeysetPage<T> findByAfter(SingularAttribute<T, ?> field, Object value, KeysetCursor after, int maxResults);
+
+    public KeysetPage<T> findByAfter(SingularAttribute<T, ?> field, Object value, boolean ignoreCase, KeysetCursor after, int maxResults, String orderBy, boolean orderByIgnoreCase,
+            boolean desc);
     
+    /*
+     * reads loading the associations of the fetch plan with the entities, see FetchPlan
+     */
+    public List<T> getAll(FetchPlan fetchPlan);
+
+    public List<T> get(int startPosition, int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc, FetchPlan fetchPlan);
+
+    public T findByPrimaryKey(Object id, FetchPlan fetchPlan);
+
+    public Map<Object, T> findByPrimaryKeys(Collection<?> ids, FetchPlan fetchPlan);
+
+    public List<T> findBy(T searchEntity, FetchPlan fetchPlan);
+
+    public List<T> findBy(T searchEntity, int firstResult, int maxResults, String orderBy, boolean orderByIgnoreCase, boolean desc, FetchPlan fetchPlan);
+
+    public List<T> findBy(SingularAttribute<T, ?> field, Object value, FetchPlan fetchPlan);
+
+    public List<T> findBy(SingularAttribute<T, ?> field, Object value, boolean ignoreCase, int firstResult, int maxResults, String orderBy, boolean orderByIgnoreCase,
+            boolean desc, FetchPlan fetchPlan);
+
     public T create(T entity);
     
     public T update(T entity);
 
     public T delete(T entity);
+
+    /*
+     * bulk variants, run in chunks with one transaction per chunk and one result per chunk
+     */
+    public List<BatchResult<T>> createAll(Collection<T> entities);
+
+    public List<BatchResult<T>> updateAll(Collection<T> entities);
+
+    public List<BatchResult<T>> deleteAll(Collection<T> entities);
+
+    /*
+     * single statement writes that do not load the entities, returning the number of affected rows
+     */
+    public int deleteByPrimaryKey(Object id);
+
+    public int deleteWhere(SingularAttribute<T, ?> field, Object value);
+
+    public int deleteWhere(SingularAttribute<T, ?> field, Object value, boolean ignoreCase);
+
+    public int deleteWhere(T searchEntity);
+
+    public int updateWhere(SingularAttribute<T, ?> field, Object value, Map<SingularAttribute<T, ?>, Object> assignments);
+
+    public int updateWhere(SingularAttribute<T, ?> field, Object value, boolean ignoreCase, Map<SingularAttribute<T, ?>, Object> assignments);
+
+    public int updateWhere(T searchEntity, Map<SingularAttribute<T, ?>, Object> assignments);
 }
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.controller;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Objects;
+import java.util.UUID;
+
+/*
+ * Position in a keyset (seek) paged result: the order by value and primary key of the last row
+ * of a page. Use encode() to hand it to a client and decode(String) to read it back; decoded values
+ * are converted to the order by and primary key types when the next page is queried.
+ */
+public final class KeysetCursor {
+
+    private static final String NULL_TOKEN = "-";
+
+    private final Object orderValue;
+    private final Object primaryKey;
+
+    KeysetCursor(Object orderValue, Object primaryKey) {
+        this.orderValue = orderValue;
+        this.primaryKey = primaryKey;
+    }
+
+    Object getOrderValue() {
+        return orderValue;
+    }
+
+    Object getPrimaryKey() {
+        return primaryKey;
+    }
+
+    public String encode() {
+        return encodeValue(orderValue) + "." + encodeValue(primaryKey);
+    }
+
+    public static KeysetCursor decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        String[] parts = cursor.split("\\.", -1);
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Invalid keyset cursor: " + cursor);
+        }
+        return new KeysetCursor(decodeValue(parts[0]), decodeValue(parts[1]));
+    }
+
+    private static String encodeValue(Object value) {
+        if (value == null) {
+            return NULL_TOKEN;
+        }
+        String text;
+        if (value instanceof java.sql.Timestamp) {
+            text = ((java.sql.Timestamp) value).toInstant().toString();
+        } else if (value instanceof Date) {
+            text = Long.toString(((Date) value).getTime());
+        } else {
+            text = value.toString();
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeValue(String value) {
+        if (NULL_TOKEN.equals(value)) {
+            return null;
+        }
+        try {
+            return new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Invalid keyset cursor value: " + value, ex);
+        }
+    }
+
+    /*
+     * convert a cursor value, which is a String after decode(), to the java type of the order by expression
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    static Object convert(Object value, Class<?> type) {
+        if (value == null || !(value instanceof String) || type.isInstance(value)) {
+            return value;
+        }
+        String text = (String) value;
+        if (type == Long.class || type == long.class) {
+            return Long.valueOf(text);
+        } else if (type == Integer.class || type == int.class) {
+            return Integer.valueOf(text);
+        } else if (type == Short.class || type == short.class) {
+            return Short.valueOf(text);
+        } else if (type == Byte.class || type == byte.class) {
+            return Byte.valueOf(text);
+        } else if (type == Double.class || type == double.class) {
+            return Double.valueOf(text);
+        } else if (type == Float.class || type == float.class) {
+            return Float.valueOf(text);
+        } else if (type == Boolean.class || type == boolean.class) {
+            return Boolean.valueOf(text);
+        } else if (type == Character.class || type == char.class) {
+            return text.charAt(0);
+        } else if (type == BigDecimal.class) {
+            return new BigDecimal(text);
+        } else if (type == BigInteger.class) {
+            return new BigInteger(text);
+        } else if (type == UUID.class) {
+            return UUID.fromString(text);
+        } else if (type == java.sql.Timestamp.class) {
+            return toTimestamp(text);
+        } else if (type == java.sql.Date.class) {
+            return new java.sql.Date(Long.parseLong(text));
+        } else if (type == java.sql.Time.class) {
+            return new java.sql.Time(Long.parseLong(text));
+        } else if (type == Date.class) {
+            return isEpochMillis(text) ? new Date(Long.parseLong(text)) : toTimestamp(text);
+        } else if (type == Instant.class) {
+            return Instant.parse(text);
+        } else if (type == LocalDate.class) {
+            return LocalDate.parse(text);
+        } else if (type == LocalDateTime.class) {
+            return LocalDateTime.parse(text);
+        } else if (type == LocalTime.class) {
+            return LocalTime.parse(text);
+        } else if (type == OffsetDateTime.class) {
+            return OffsetDateTime.parse(text);
+        } else if (type == ZonedDateTime.class) {
+            return ZonedDateTime.parse(text);
+        } else if (type.isEnum()) {
+            return Enum.valueOf((Class<? extends Enum>) type, text);
+        }
+        throw new IllegalArgumentException("Keyset cursor does not support order by type " + type.getName());
+    }
+
+    /*
+     * timestamps are encoded as instants to keep their nanoseconds, seeking from a value truncated to
+     * milliseconds would repeat or skip rows
+     */
+    private static java.sql.Timestamp toTimestamp(String text) {
+        return isEpochMillis(text) ? new java.sql.Timestamp(Long.parseLong(text)) : java.sql.Timestamp.from(Instant.parse(text));
+    }
+
+    private static boolean isEpochMillis(String text) {
+        return text.indexOf('T') < 0;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof KeysetCursor)) {
+            return false;
+        }
+        KeysetCursor other = (KeysetCursor) obj;
+        return Objects.equals(orderValue, other.orderValue) && Objects.equals(primaryKey, other.primaryKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(orderValue, primaryKey);
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.controller;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/*
+ * Default EntityCache: size bounded LRU with an optional time to live. The cache stores a copy of every
+ * entity it is handed and returns a fresh copy on every hit made by the copier, so callers cannot change
+ * the cached instance. serializingCopier() copies Serializable entities; UnaryOperator.identity() shares
+ * the cached instances between callers instead, which then must never be modified.
+ */
+public class LruEntityCache<T> implements EntityCache<T> {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final UnaryOperator<T> copier;
+    private final LinkedHashMap<Object, CacheEntry<T>> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    public LruEntityCache(int maxSize, UnaryOperator<T> copier) {
+        this(maxSize, 0, TimeUnit.MILLISECONDS, copier);
+    }
+
+    /*
+     * ttl of 0 keeps entries until they are evicted or invalidated
+     */
+    public LruEntityCache(int maxSize, long ttl, TimeUnit unit, UnaryOperator<T> copier) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Max size must be greater than 0.");
+        }
+        if (ttl < 0) {
+            throw new IllegalArgumentException("Time to live must not be negative.");
+        }
+        if (copier == null) {
+            throw new IllegalArgumentException("Copier must not be null, use UnaryOperator.identity() to share cached instances.");
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.copier = copier;
+        this.entries = new LinkedHashMap<Object, CacheEntry<T>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, CacheEntry<T>> eldest) {
+                if (size() > LruEntityCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public T get(Object primaryKey) {
+        CacheEntry<T> entry;
+        synchronized (this) {
+            entry = entries.get(primaryKey);
+            if (entry != null && entry.isExpired(System.nanoTime())) {
+                entries.remove(primaryKey);
+                expirations.incrementAndGet();
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return copy(entry.value);
+    }
+
+    @Override
+    public void put(Object primaryKey, T entity) {
+        if (primaryKey == null || entity == null) {
+            return;
+        }
+        CacheEntry<T> entry = new CacheEntry<>(copy(entity), ttlNanos == 0 ? Long.MAX_VALUE : System.nanoTime() + ttlNanos);
+        synchronized (this) {
+            entries.put(primaryKey, entry);
+        }
+    }
+
+    @Override
+    public synchronized void invalidate(Object primaryKey) {
+        entries.remove(primaryKey);
+    }
+
+    @Override
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    /*
+     * drop expired entries now instead of on their next lookup
+     */
+    public synchronized void cleanUp() {
+        long now = System.nanoTime();
+        Iterator<CacheEntry<T>> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isExpired(now)) {
+                iterator.remove();
+                expirations.incrementAndGet();
+            }
+        }
+    }
+
+    private T copy(T entity) {
+        return copier.apply(entity);
+    }
+
+    /*
+     * Deep copy through Java serialization for Serializable entities. Serializing an entity also loads
+     * the lazy associations it has not loaded yet.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> UnaryOperator<T> serializingCopier() {
+        return (T entity) -> {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                    out.writeObject(entity);
+                }
+                try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                    return (T) in.readObject();
+                }
+            } catch (IOException | ClassNotFoundException ex) {
+                throw new IllegalStateException("Could not copy " + entity.getClass().getName() + " by serialization.", ex);
+            }
+        };
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public double getHitRatio() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0.0 : (double) hitCount / total;
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public long getExpirationCount() {
+        return expirations.get();
+    }
+
+    @Override
+    public String toString() {
+        return "LruEntityCache [size=" + getSize() + ", maxSize=" + maxSize + ", hits=" + hits.get() + ", misses=" + misses.get() + ", evictions=" + evictions.get()
+                + ", expirations=" + expirations.get() + "]";
+    }
+
+    private static class CacheEntry<T> {
+        private final T value;
+        private final long expiresAt;
+
+        CacheEntry(T value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now - expiresAt >= 0 && expiresAt != Long.MAX_VALUE;
+        }
+    }
+}
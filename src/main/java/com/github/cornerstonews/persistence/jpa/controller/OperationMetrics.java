@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.controller;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Measurements of one controller operation as handed to a MetricsSink. Latency covers the whole call,
+ * entity manager time only the time an EntityManager was open for it (0 when served from a cache).
+ */
+public class OperationMetrics {
+
+    private final String entityName;
+    private final String operation;
+    private final String field;
+    private final boolean ignoreCase;
+    private final String orderBy;
+    private final boolean orderByIgnoreCase;
+    private final boolean desc;
+    private final int firstResult;
+    private final int maxResults;
+    private final long latencyNanos;
+    private final long entityManagerNanos;
+    private final long rows;
+    private final int commits;
+    private final int rollbacks;
+    private final Throwable failure;
+
+    OperationMetrics(String entityName, String operation, String field, boolean ignoreCase, String orderBy, boolean orderByIgnoreCase, boolean desc, int firstResult,
+            int maxResults, long latencyNanos, long entityManagerNanos, long rows, int commits, int rollbacks, Throwable failure) {
+        this.entityName = entityName;
+        this.operation = operation;
+        this.field = field;
+        this.ignoreCase = ignoreCase;
+        this.orderBy = orderBy;
+        this.orderByIgnoreCase = orderByIgnoreCase;
+        this.desc = desc;
+        this.firstResult = firstResult;
+        this.maxResults = maxResults;
+        this.latencyNanos = latencyNanos;
+        this.entityManagerNanos = entityManagerNanos;
+        this.rows = rows;
+        this.commits = commits;
+        this.rollbacks = rollbacks;
+        this.failure = failure;
+    }
+
+    public String getEntityName() {
+        return entityName;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    /*
+     * filter attribute of findBy style operations, null otherwise
+     */
+    public String getField() {
+        return field;
+    }
+
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    /*
+     * order by attribute the query ordered by: the requested order by resolved, the default when none
+     * was requested, or the attribute of a predicates provider's order by path, "(expression)" for
+     * other provider expressions. null for operations without ordering.
+     */
+    public String getOrderBy() {
+        return orderBy;
+    }
+
+    public boolean isOrderByIgnoreCase() {
+        return orderByIgnoreCase;
+    }
+
+    public boolean isDesc() {
+        return desc;
+    }
+
+    /*
+     * -1 when the operation was not paged
+     */
+    public int getFirstResult() {
+        return firstResult;
+    }
+
+    /*
+     * -1 when the operation was not paged
+     */
+    public int getMaxResults() {
+        return maxResults;
+    }
+
+    public boolean isPaged() {
+        return maxResults >= 0;
+    }
+
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    public long getLatency(TimeUnit unit) {
+        return unit.convert(latencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public long getEntityManagerNanos() {
+        return entityManagerNanos;
+    }
+
+    /*
+     * rows returned by reads, entities written by writes
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    public int getCommits() {
+        return commits;
+    }
+
+    public int getRollbacks() {
+        return rollbacks;
+    }
+
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /*
+     * the query shape without paging values, stable across calls that only differ in their parameters
+     */
+    public String getShapeKey() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(entityName).append(".").append(operation);
+        if (field != null) {
+            builder.append(" field=").append(field).append(" ignoreCase=").append(ignoreCase);
+        }
+        if (orderBy != null) {
+            builder.append(" orderBy=").append(orderBy).append(" orderByIgnoreCase=").append(orderByIgnoreCase).append(" desc=").append(desc);
+        }
+        if (isPaged()) {
+            builder.append(" paged");
+        }
+        return builder.toString();
+    }
+
+    public String getShape() {
+        StringBuilder builder = new StringBuilder(getShapeKey());
+        if (isPaged()) {
+            builder.append(" firstResult=").append(firstResult).append(" maxResults=").append(maxResults);
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "OperationMetrics [" + getShape() + ", latencyMicros=" + getLatency(TimeUnit.MICROSECONDS) + ", entityManagerMicros="
+                + TimeUnit.NANOSECONDS.toMicros(entityManagerNanos) + ", rows=" + rows + ", commits=" + commits + ", rollbacks=" + rollbacks + ", failed=" + isFailed() + "]";
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.controller;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Running totals for one operation shape. Latencies go into a histogram of power of two microsecond
+ * buckets, so percentiles are upper bounds accurate to a factor of two.
+ */
+public class OperationStatistics {
+
+    private static final int BUCKETS = 40;
+
+    private final String shapeKey;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder rollbacks = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final LongAdder totalEntityManagerNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+    private final AtomicLongArray latencyHistogram = new AtomicLongArray(BUCKETS);
+
+    public OperationStatistics(String shapeKey) {
+        this.shapeKey = shapeKey;
+    }
+
+    void record(OperationMetrics metrics) {
+        count.increment();
+        if (metrics.isFailed()) {
+            failures.increment();
+        }
+        commits.add(metrics.getCommits());
+        rollbacks.add(metrics.getRollbacks());
+        rows.add(metrics.getRows());
+        long latency = metrics.getLatencyNanos();
+        totalLatencyNanos.add(latency);
+        totalEntityManagerNanos.add(metrics.getEntityManagerNanos());
+        long max = maxLatencyNanos.get();
+        while (latency > max && !maxLatencyNanos.compareAndSet(max, latency)) {
+            max = maxLatencyNanos.get();
+        }
+        latencyHistogram.incrementAndGet(bucket(latency));
+    }
+
+    private static int bucket(long latencyNanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(latencyNanos);
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    public String getShapeKey() {
+        return shapeKey;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getCommits() {
+        return commits.sum();
+    }
+
+    public long getRollbacks() {
+        return rollbacks.sum();
+    }
+
+    public long getRows() {
+        return rows.sum();
+    }
+
+    public long getMeanLatencyNanos() {
+        long total = count.sum();
+        return total == 0 ? 0 : totalLatencyNanos.sum() / total;
+    }
+
+    public long getMaxLatencyNanos() {
+        return maxLatencyNanos.get();
+    }
+
+    public long getMeanEntityManagerNanos() {
+        long total = count.sum();
+        return total == 0 ? 0 : totalEntityManagerNanos.sum() / total;
+    }
+
+    /*
+     * upper bound of the given latency percentile (0-100) in nanoseconds
+     */
+    public long getLatencyPercentileNanos(double percentile) {
+        long total = 0;
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = latencyHistogram.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0) {
+                return TimeUnit.MICROSECONDS.toNanos(1L << i);
+            }
+        }
+        return maxLatencyNanos.get();
+    }
+
+    /*
+     * number of calls per latency bucket, bucket i counts calls under 2^i microseconds
+     */
+    public long[] getLatencyHistogram() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = latencyHistogram.get(i);
+        }
+        return counts;
+    }
+
+    @Override
+    public String toString() {
+        return "OperationStatistics [" + shapeKey + ", count=" + getCount() + ", failures=" + getFailures() + ", commits=" + getCommits() + ", rollbacks=" + getRollbacks()
+                + ", rows=" + getRows() + ", meanMicros=" + TimeUnit.NANOSECONDS.toMicros(getMeanLatencyNanos()) + ", p99Micros="
+                + TimeUnit.NANOSECONDS.toMicros(getLatencyPercentileNanos(99)) + ", maxMicros=" + TimeUnit.NANOSECONDS.toMicros(getMaxLatencyNanos()) + "]";
+    }
+}
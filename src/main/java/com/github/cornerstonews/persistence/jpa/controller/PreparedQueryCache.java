@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.controller;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.EntityManagerFactory;
+
+/*
+ * Bounded LRU index of the query shapes a controller has registered as named queries. A hit means
+ * the shape can be created with createNamedQuery and only needs its parameters bound; a miss means
+ * the criteria query has to be built and registered. Named queries cannot be removed from an
+ * EntityManagerFactory, so an evicted shape stays registered and is simply registered again (under
+ * the same name) the next time it misses.
+ */
+public class PreparedQueryCache {
+
+    private final int maxSize;
+    private final Map<String, Set<EntityManagerFactory>> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public PreparedQueryCache(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Max size must not be negative.");
+        }
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<String, Set<EntityManagerFactory>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Set<EntityManagerFactory>> eldest) {
+                if (size() > PreparedQueryCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    synchronized boolean lookup(String name, EntityManagerFactory emf) {
+        Set<EntityManagerFactory> factories = entries.get(name);
+        if (factories != null && factories.contains(emf)) {
+            hits.incrementAndGet();
+            return true;
+        }
+        misses.incrementAndGet();
+        return false;
+    }
+
+    synchronized void registered(String name, EntityManagerFactory emf) {
+        Set<EntityManagerFactory> factories = entries.get(name);
+        if (factories == null) {
+            factories = Collections.newSetFromMap(new WeakHashMap<>());
+            entries.put(name, factories);
+        }
+        factories.add(emf);
+    }
+
+    synchronized void remove(String name) {
+        entries.remove(name);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public double getHitRatio() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0.0 : (double) hitCount / total;
+    }
+
+    @Override
+    public String toString() {
+        return "PreparedQueryCache [size=" + getSize() + ", maxSize=" + maxSize + ", hits=" + hits.get() + ", misses=" + misses.get() + ", evictions=" + evictions.get() + "]";
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.controller;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.persistence.Query;
+
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.QueryHints;
+
+/*
+ * Hints applied to the queries of controller reads. Read-only queries return the shared cache instances
+ * without cloning them or building change tracking state, so entities read this way must be treated as
+ * immutable; pass a copy to update. A fetch size of 0 and a null cache usage leave the driver and
+ * persistence unit defaults alone. Cache usage takes one of the org.eclipse.persistence.config.CacheUsage
+ * values.
+ */
+public final class ReadOptions {
+
+    public static final ReadOptions DEFAULT = new ReadOptions(false, 0, null);
+
+    public static final ReadOptions READ_ONLY = new ReadOptions(true, 0, null);
+
+    private final boolean readOnly;
+    private final int fetchSize;
+    private final String cacheUsage;
+
+    public ReadOptions(boolean readOnly, int fetchSize, String cacheUsage) {
+        if (fetchSize < 0) {
+            throw new IllegalArgumentException("Fetch size must not be negative.");
+        }
+        this.readOnly = readOnly;
+        this.fetchSize = fetchSize;
+        this.cacheUsage = cacheUsage;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public String getCacheUsage() {
+        return cacheUsage;
+    }
+
+    public ReadOptions withReadOnly(boolean readOnly) {
+        return new ReadOptions(readOnly, this.fetchSize, this.cacheUsage);
+    }
+
+    public ReadOptions withFetchSize(int fetchSize) {
+        return new ReadOptions(this.readOnly, fetchSize, this.cacheUsage);
+    }
+
+    public ReadOptions withCacheUsage(String cacheUsage) {
+        return new ReadOptions(this.readOnly, this.fetchSize, cacheUsage);
+    }
+
+    boolean isDefault() {
+        return !readOnly && fetchSize == 0 && cacheUsage == null;
+    }
+
+    /*
+     * Read-only and cache usage only apply to queries returning entities, counts and projections only get
+     * the fetch size. Read-only is left off when the entities have to stay managed, inside a session.
+     */
+    void apply(Query query, boolean entities, boolean managed) {
+        if (fetchSize > 0) {
+            query.setHint(QueryHints.JDBC_FETCH_SIZE, fetchSize);
+        }
+        if (!entities) {
+            return;
+        }
+        if (readOnly && !managed) {
+            query.setHint(QueryHints.READ_ONLY, HintValues.TRUE);
+        }
+        if (cacheUsage != null) {
+            query.setHint(QueryHints.CACHE_USAGE, cacheUsage);
+        }
+    }
+
+    /*
+     * the same hints as properties for EntityManager.find
+     */
+    Map<String, Object> toProperties(boolean managed) {
+        Map<String, Object> properties = new HashMap<>();
+        if (readOnly && !managed) {
+            properties.put(QueryHints.READ_ONLY, HintValues.TRUE);
+        }
+        if (cacheUsage != null) {
+            properties.put(QueryHints.CACHE_USAGE, cacheUsage);
+        }
+        return properties;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ReadOptions)) {
+            return false;
+        }
+        ReadOptions other = (ReadOptions) obj;
+        return readOnly == other.readOnly && fetchSize == other.fetchSize && Objects.equals(cacheUsage, other.cacheUsage);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(readOnly, fetchSize, cacheUsage);
+    }
+
+    @Override
+    public String toString() {
+        return "ReadOptions [readOnly=" + readOnly + ", fetchSize=" + fetchSize + ", cacheUsage=" + cacheUsage + "]";
+    }
+}
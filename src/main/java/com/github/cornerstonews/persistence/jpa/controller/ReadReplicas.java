@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import javax.persistence.EntityManagerFactory;
+
+/*
+ * Read replica EntityManagerFactories for AbstractJpaController reads, with the policy choosing between
+ * them. With a read-your-writes window a thread that committed a write through a controller using
+ * these replicas reads from the primary until the window has passed, so it does not miss its own
+ * write on a lagging replica. Share one instance between controllers to pin across them. The pin is
+ * kept per thread, so it misses writes made on other threads such as those of AsyncJpaController or
+ * WriteBehindWriter; run such callers in a ReadYourWritesScope to pin them wherever they write.
+ */
+public class ReadReplicas {
+
+    private final List<EntityManagerFactory> replicas;
+
+    private final ReplicaRoutingPolicy policy;
+
+    private final AtomicIntegerArray inFlight;
+
+    private final ThreadLocal<Long> lastWrite = new ThreadLocal<>();
+
+    private volatile long readYourWritesNanos = 0;
+
+    public ReadReplicas(List<EntityManagerFactory> replicas) {
+        this(replicas, ReplicaRoutingPolicy.roundRobin());
+    }
+
+    public ReadReplicas(List<EntityManagerFactory> replicas, ReplicaRoutingPolicy policy) {
+        if (replicas == null || replicas.isEmpty()) {
+            throw new IllegalArgumentException("At least one replica is required.");
+        }
+        if (policy == null) {
+            throw new IllegalArgumentException("Routing policy must not be null.");
+        }
+        this.replicas = Collections.unmodifiableList(new ArrayList<>(replicas));
+        this.policy = policy;
+        this.inFlight = new AtomicIntegerArray(this.replicas.size());
+    }
+
+    public List<EntityManagerFactory> getReplicas() {
+        return replicas;
+    }
+
+    public ReplicaRoutingPolicy getPolicy() {
+        return policy;
+    }
+
+    public int getInFlight(int replica) {
+        return inFlight.get(replica);
+    }
+
+    public long getReadYourWritesWindow(TimeUnit unit) {
+        return unit.convert(readYourWritesNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /*
+     * how long a thread, or a ReadYourWritesScope, reads from the primary after its last committed
+     * write, 0 disables pinning
+     */
+    public void setReadYourWritesWindow(long window, TimeUnit unit) {
+        if (window < 0) {
+            throw new IllegalArgumentException("Read-your-writes window must not be negative.");
+        }
+        this.readYourWritesNanos = unit.toNanos(window);
+    }
+
+    /*
+     * whether reads of the current thread have to go to the primary because of a recent write of the
+     * thread or of its current ReadYourWritesScope
+     */
+    public boolean isPinned() {
+        ReadYourWritesScope scope = ReadYourWritesScope.current();
+        if (scope != null && scope.isPinned(readYourWritesNanos)) {
+            return true;
+        }
+        Long written = lastWrite.get();
+        if (written == null) {
+            return false;
+        }
+        if (System.nanoTime() - written < readYourWritesNanos) {
+            return true;
+        }
+        lastWrite.remove();
+        return false;
+    }
+
+    /*
+     * a write made within a ReadYourWritesScope pins the scope only, a pooled thread running it must
+     * not pin the unrelated work it runs next
+     */
+    void written() {
+        if (readYourWritesNanos > 0) {
+            ReadYourWritesScope scope = ReadYourWritesScope.current();
+            if (scope != null) {
+                scope.written();
+            } else {
+                lastWrite.set(System.nanoTime());
+            }
+        }
+    }
+
+    /*
+     * index of the replica to read from, counted as in flight until released
+     */
+    int acquire() {
+        int[] snapshot = new int[inFlight.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = inFlight.get(i);
+        }
+        int replica = policy.select(snapshot);
+        if (replica < 0 || replica >= snapshot.length) {
+            throw new IllegalStateException("Routing policy selected replica " + replica + " of " + snapshot.length + ".");
+        }
+        inFlight.incrementAndGet(replica);
+        return replica;
+    }
+
+    void release(int replica) {
+        inFlight.decrementAndGet(replica);
+    }
+
+    EntityManagerFactory get(int replica) {
+        return replicas.get(replica);
+    }
+
+    @Override
+    public String toString() {
+        return "ReadReplicas [replicas=" + replicas.size() + ", inFlight=" + inFlight + "]";
+    }
+}
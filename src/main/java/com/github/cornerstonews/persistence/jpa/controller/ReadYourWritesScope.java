@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.controller;
+
+import java.util.function.Supplier;
+
+/*
+ * Read-your-writes pin carried by a caller instead of a thread. Writes committed through a controller
+ * with read replicas while a scope is current mark it, and reads made while it is current go to the
+ * primary until the replicas' read-your-writes window has passed since its last write, on whatever
+ * thread they run. Such writes pin the scope instead of the thread. AsyncJpaController runs its tasks in the scope that was current when they were
+ * submitted, WriteBehindWriter marks the scope its entities were submitted in once they committed.
+ */
+public final class ReadYourWritesScope {
+
+    private static final ThreadLocal<ReadYourWritesScope> current = new ThreadLocal<>();
+
+    private volatile long lastWrite = 0;
+
+    private volatile boolean written = false;
+
+    public ReadYourWritesScope() {
+    }
+
+    /*
+     * the scope of the current thread, null outside of one
+     */
+    public static ReadYourWritesScope current() {
+        return current.get();
+    }
+
+    public <R> R supply(Supplier<R> work) {
+        ReadYourWritesScope previous = current.get();
+        current.set(this);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                current.remove();
+            } else {
+                current.set(previous);
+            }
+        }
+    }
+
+    public void run(Runnable work) {
+        supply(() -> {
+            work.run();
+            return null;
+        });
+    }
+
+    public boolean hasWritten() {
+        return written;
+    }
+
+    void written() {
+        lastWrite = System.nanoTime();
+        written = true;
+    }
+
+    boolean isPinned(long windowNanos) {
+        return written && System.nanoTime() - lastWrite < windowNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "ReadYourWritesScope [written=" + written + "]";
+    }
+}
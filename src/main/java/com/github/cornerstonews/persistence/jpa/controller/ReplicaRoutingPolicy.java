@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.controller;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Chooses the replica a read goes to. Called concurrently for every read, implementations must be
+ * thread safe and cheap.
+ */
+public interface ReplicaRoutingPolicy {
+
+    /*
+     * index of the replica to use, inFlight holds the number of reads currently running on each replica
+     */
+    public int select(int[] inFlight);
+
+    public static ReplicaRoutingPolicy roundRobin() {
+        AtomicInteger next = new AtomicInteger();
+        return (int[] inFlight) -> Math.floorMod(next.getAndIncrement(), inFlight.length);
+    }
+
+    /*
+     * the replica with the fewest running reads, ties broken round robin so idle replicas share the load
+     */
+    public static ReplicaRoutingPolicy leastInFlight() {
+        AtomicInteger next = new AtomicInteger();
+        return (int[] inFlight) -> {
+            int start = Math.floorMod(next.getAndIncrement(), inFlight.length);
+            int selected = start;
+            for (int i = 1; i < inFlight.length; i++) {
+                int index = (start + i) % inFlight.length;
+                if (inFlight[index] < inFlight[selected]) {
+                    selected = index;
+                }
+            }
+            return selected;
+        };
+    }
+}
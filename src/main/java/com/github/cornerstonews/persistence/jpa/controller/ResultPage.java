@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.controller;
+
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * One offset page together with its total. getTotal() is null when the page was fetched with CountMode.NONE.
+ */
+public class ResultPage<T> {
+
+    private final List<T> items;
+    private final int firstResult;
+    private final int maxResults;
+    private final Long total;
+    private final boolean hasNext;
+
+    public ResultPage(List<T> items, int firstResult, int maxResults, Long total, boolean hasNext) {
+        this.items = Collections.unmodifiableList(items);
+        this.firstResult = firstResult;
+        this.maxResults = maxResults;
+        this.total = total;
+        this.hasNext = hasNext;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public int getFirstResult() {
+        return firstResult;
+    }
+
+    public int getMaxResults() {
+        return maxResults;
+    }
+
+    public Long getTotal() {
+        return total;
+    }
+
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+    @Override
+    public String toString() {
+        return "ResultPage [firstResult=" + firstResult + ", maxResults=" + maxResults + ", size=" + items.size() + ", total=" + total + ", hasNext=" + hasNext + "]";
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.controller;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * One range of a parallel scan, the rows whose scan attribute lies between the inclusive bounds, or
+ * the rows whose scan attribute is null for the null values partition.
+ */
+public final class ScanPartition {
+
+    private final int index;
+    private final long lowerBound;
+    private final long upperBound;
+    private final boolean nullValues;
+    private final AtomicLong rows = new AtomicLong();
+    private volatile boolean completed;
+
+    ScanPartition(int index, long lowerBound, long upperBound, long rows, boolean completed) {
+        this(index, lowerBound, upperBound, false, rows, completed);
+    }
+
+    private ScanPartition(int index, long lowerBound, long upperBound, boolean nullValues, long rows, boolean completed) {
+        this.index = index;
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+        this.nullValues = nullValues;
+        this.rows.set(rows);
+        this.completed = completed;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public long getLowerBound() {
+        return lowerBound;
+    }
+
+    public long getUpperBound() {
+        return upperBound;
+    }
+
+    /*
+     * true for the partition of rows whose scan attribute is null, its bounds are then meaningless
+     */
+    public boolean isNullValues() {
+        return nullValues;
+    }
+
+    /*
+     * rows delivered so far, the final count once completed
+     */
+    public long getRows() {
+        return rows.get();
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    static ScanPartition nullValues(int index, long rows, boolean completed) {
+        return new ScanPartition(index, 0, 0, true, rows, completed);
+    }
+
+    void started() {
+        rows.set(0);
+    }
+
+    void delivered() {
+        rows.incrementAndGet();
+    }
+
+    void completed() {
+        completed = true;
+    }
+
+    @Override
+    public String toString() {
+        String range = nullValues ? "nullValues=true" : "lowerBound=" + lowerBound + ", upperBound=" + upperBound;
+        return "ScanPartition [index=" + index + ", " + range + ", rows=" + rows + ", completed=" + completed + "]";
+    }
+}
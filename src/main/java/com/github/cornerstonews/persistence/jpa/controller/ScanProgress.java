@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Progress of a parallel scan: the partitions it was split into and which of them completed. It is
+ * updated while the scan runs and can be polled from other threads. Hand the same instance, or one
+ * read back with decode(encode()), to scan again to resume a failed scan: completed partitions are
+ * skipped and the others are read again from their start, so their rows may be delivered twice.
+ */
+public final class ScanProgress {
+
+    private static final String PARTITION_SEPARATOR = ",";
+
+    private static final String FIELD_SEPARATOR = ":";
+
+    private static final String NULL_BOUND = "null";
+
+    private volatile String attribute;
+
+    private volatile List<ScanPartition> partitions = Collections.emptyList();
+
+    private volatile boolean initialized = false;
+
+    public ScanProgress() {
+    }
+
+    /*
+     * name of the scan attribute, null before the scan started
+     */
+    public String getAttribute() {
+        return attribute;
+    }
+
+    public List<ScanPartition> getPartitions() {
+        return partitions;
+    }
+
+    public int getTotalPartitions() {
+        return partitions.size();
+    }
+
+    public int getCompletedPartitions() {
+        int completed = 0;
+        for (ScanPartition partition : partitions) {
+            if (partition.isCompleted()) {
+                completed++;
+            }
+        }
+        return completed;
+    }
+
+    public long getRows() {
+        long rows = 0;
+        for (ScanPartition partition : partitions) {
+            rows += partition.getRows();
+        }
+        return rows;
+    }
+
+    public boolean isComplete() {
+        return initialized && getCompletedPartitions() == partitions.size();
+    }
+
+    boolean isInitialized() {
+        return initialized;
+    }
+
+    synchronized void initialize(String attribute, List<ScanPartition> partitions) {
+        if (this.initialized) {
+            throw new IllegalStateException("Scan progress is already initialized.");
+        }
+        this.attribute = attribute;
+        this.partitions = Collections.unmodifiableList(new ArrayList<>(partitions));
+        this.initialized = true;
+    }
+
+    /*
+     * attribute followed by lowerBound:upperBound:rows:completed of every partition, with both bounds
+     * written as null for the null values partition
+     */
+    public String encode() {
+        if (!initialized) {
+            throw new IllegalStateException("Scan progress is not initialized.");
+        }
+        StringBuilder builder = new StringBuilder(attribute);
+        for (ScanPartition partition : partitions) {
+            if (partition.isNullValues()) {
+                builder.append(PARTITION_SEPARATOR).append(NULL_BOUND);
+                builder.append(FIELD_SEPARATOR).append(NULL_BOUND);
+            } else {
+                builder.append(PARTITION_SEPARATOR).append(partition.getLowerBound());
+                builder.append(FIELD_SEPARATOR).append(partition.getUpperBound());
+            }
+            builder.append(FIELD_SEPARATOR).append(partition.getRows());
+            builder.append(FIELD_SEPARATOR).append(partition.isCompleted() ? 1 : 0);
+        }
+        return builder.toString();
+    }
+
+    public static ScanProgress decode(String encoded) {
+        if (encoded == null || encoded.isEmpty()) {
+            throw new IllegalArgumentException("Scan progress must not be empty.");
+        }
+        String[] parts = encoded.split(PARTITION_SEPARATOR);
+        List<ScanPartition> partitions = new ArrayList<>(parts.length - 1);
+        try {
+            for (int i = 1; i < parts.length; i++) {
+                String[] fields = parts[i].split(FIELD_SEPARATOR);
+                if (fields.length != 4) {
+                    throw new IllegalArgumentException("Invalid scan partition: " + parts[i]);
+                }
+                long rows = Long.parseLong(fields[2]);
+                boolean completed = "1".equals(fields[3]);
+                if (NULL_BOUND.equals(fields[0]) && NULL_BOUND.equals(fields[1])) {
+                    partitions.add(ScanPartition.nullValues(i - 1, rows, completed));
+                } else {
+                    partitions.add(new ScanPartition(i - 1, Long.parseLong(fields[0]), Long.parseLong(fields[1]), rows, completed));
+                }
+            }
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid scan progress: " + encoded, ex);
+        }
+        ScanProgress progress = new ScanProgress();
+        progress.initialize(parts[0], partitions);
+        return progress;
+    }
+
+    @Override
+    public String toString() {
+        return "ScanProgress [attribute=" + attribute + ", partitions=" + partitions.size() + ", completed=" + getCompletedPartitions() + ", rows=" + getRows() + "]";
+    }
+}
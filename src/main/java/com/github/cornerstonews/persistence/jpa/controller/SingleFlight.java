@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.controller;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/*
+ * Coalesces identical concurrent reads: the first caller for a key runs the query, callers arriving
+ * while it runs wait for and share its result or exception instead of sending the same query. Results
+ * are shared instances unless copyResults is set, in which case every waiter reads its own detached copy
+ * of the leader's entities by primary key, one IN query per waiter, and may modify it. Copies pay off
+ * when the coalesced query is much more expensive than that primary key lookup. Only reads in flight are
+ * coalesced, nothing is kept once the query returns. Keys are scoped to the entity and persistence unit,
+ * so one instance can be shared by several controllers.
+ */
+public class SingleFlight {
+
+    private final boolean copyResults;
+    private final ConcurrentHashMap<Object, CompletableFuture<Object>> flights = new ConcurrentHashMap<>();
+
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong collapsed = new AtomicLong();
+
+    public SingleFlight() {
+        this(false);
+    }
+
+    public SingleFlight(boolean copyResults) {
+        this.copyResults = copyResults;
+    }
+
+    public boolean isCopyResults() {
+        return copyResults;
+    }
+
+    @SuppressWarnings("unchecked")
+    <R> R execute(Object key, Supplier<R> read, UnaryOperator<R> copier) {
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> leader = flights.putIfAbsent(key, flight);
+        if (leader != null) {
+            collapsed.incrementAndGet();
+            R result;
+            try {
+                result = (R) leader.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw e;
+            }
+            return copyResults && result != null ? copier.apply(result) : result;
+        }
+
+        executions.incrementAndGet();
+        try {
+            R result = read.get();
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    /*
+     * reads started from now on do not join the reads in flight, called by the controller after writes
+     */
+    void invalidateAll() {
+        flights.clear();
+    }
+
+    public int getInFlightCount() {
+        return flights.size();
+    }
+
+    public long getExecutionCount() {
+        return executions.get();
+    }
+
+    public long getCollapsedCount() {
+        return collapsed.get();
+    }
+
+    @Override
+    public String toString() {
+        return "SingleFlight [copyResults=" + copyResults + ", inFlight=" + getInFlightCount() + ", executions=" + executions.get() + ", collapsed=" + collapsed.get() + "]";
+    }
+}
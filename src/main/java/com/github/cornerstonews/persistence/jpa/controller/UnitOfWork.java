@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.controller;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+
+/*
+ * One EntityManager bound to the current thread for an EntityManagerFactory while a session started by
+ * AbstractJpaController.inSession or inTransaction runs. Every controller on the same factory uses the
+ * bound EntityManager instead of creating its own, so they share its persistence context and connection.
+ */
+final class UnitOfWork {
+
+    private static final ThreadLocal<Map<EntityManagerFactory, UnitOfWork>> CURRENT = new ThreadLocal<>();
+
+    private final EntityManager em;
+
+    private final List<Runnable> afterCommit = new ArrayList<>();
+
+    private UnitOfWork(EntityManager em) {
+        this.em = em;
+    }
+
+    static UnitOfWork current(EntityManagerFactory emf) {
+        Map<EntityManagerFactory, UnitOfWork> bound = CURRENT.get();
+        return bound == null ? null : bound.get(emf);
+    }
+
+    /*
+     * Runs the work in the session bound for the factory, binding a new one with an EntityManager from the
+     * supplier if there is none. Nested calls join the outer session and only the outermost closes it.
+     */
+    static <R> R run(EntityManagerFactory emf, Supplier<EntityManager> entityManagers, boolean transactional, Supplier<R> work) {
+        UnitOfWork current = current(emf);
+        if (current != null) {
+            return transactional ? current.inTransaction(work) : work.get();
+        }
+
+        Map<EntityManagerFactory, UnitOfWork> bound = CURRENT.get();
+        if (bound == null) {
+            bound = new HashMap<>();
+            CURRENT.set(bound);
+        }
+        UnitOfWork unitOfWork = new UnitOfWork(entityManagers.get());
+        bound.put(emf, unitOfWork);
+        try {
+            return transactional ? unitOfWork.inTransaction(work) : work.get();
+        } finally {
+            bound.remove(emf);
+            if (bound.isEmpty()) {
+                CURRENT.remove();
+            }
+            if (unitOfWork.em.isOpen()) {
+                unitOfWork.em.close();
+            }
+        }
+    }
+
+    EntityManager getEntityManager() {
+        return em;
+    }
+
+    boolean isTransactionActive() {
+        return em.getTransaction().isActive();
+    }
+
+    /*
+     * action to run once the session's transaction committed, dropped if it rolls back
+     */
+    void afterCommit(Runnable action) {
+        afterCommit.add(action);
+    }
+
+    private <R> R inTransaction(Supplier<R> work) {
+        EntityTransaction transaction = em.getTransaction();
+        if (transaction.isActive()) {
+            return work.get();
+        }
+
+        transaction.begin();
+        try {
+            R result = work.get();
+            transaction.commit();
+            for (Runnable action : afterCommit) {
+                action.run();
+            }
+            return result;
+        } catch (RuntimeException ex) {
+            if (transaction.isActive()) {
+                transaction.rollback();
+            }
+            throw ex;
+        } finally {
+            afterCommit.clear();
+        }
+    }
+}
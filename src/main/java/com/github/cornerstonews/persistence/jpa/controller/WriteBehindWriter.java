@@ -0,0 +1,299 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/*
+ * Write-behind front of a JpaController for high rates of small writes. create/update queue the entity
+ * and return at once, a background thread commits the queued entities in groups through createAll and
+ * updateAll, so many writes share one transaction commit. A group is committed when it reaches
+ * maxBatchSize or maxDelay after its first entity was queued, whichever comes first; consecutive creates
+ * and consecutive updates share a transaction, a switch between them starts a new one. Groups larger
+ * than the controller's batch size are committed in chunks of that size. If a chunk fails its entities
+ * are written again one by one so only the failing ones fail.
+ *
+ * The future of a submission completes with the submitted entity once its transaction committed, or
+ * exceptionally with the exception that rolled it back. It is completed on the writer thread, run heavy
+ * follow-up work with the async variants of CompletableFuture. When the queue is full create/update block
+ * until there is room. close() stops taking entities, commits everything queued and waits for it.
+ *
+ * The writes commit on the writer thread, so the per thread read-your-writes pin of read replicas does
+ * not apply to the submitting thread. Entities submitted within a ReadYourWritesScope mark that scope
+ * when they committed, before their future completes.
+ */
+public class WriteBehindWriter<T> implements AutoCloseable {
+
+    private static final Logger log = LogManager.getLogger(WriteBehindWriter.class);
+
+    private static final AtomicInteger writerNumber = new AtomicInteger();
+
+    private enum Kind {
+        CREATE, UPDATE, FLUSH, CLOSE
+    }
+
+    private final JpaController<T> controller;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<Submission<T>> queue;
+    private final ReentrantReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private final Thread worker;
+    private volatile boolean closed = false;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+
+    public WriteBehindWriter(JpaController<T> controller, int queueCapacity, int maxBatchSize, long maxDelay, TimeUnit unit) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be greater than 0.");
+        }
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Max batch size must be greater than 0.");
+        }
+        if (maxDelay < 0) {
+            throw new IllegalArgumentException("Max delay must not be negative.");
+        }
+        this.controller = controller;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.worker = new Thread(this::run, "jpa-write-behind-" + writerNumber.incrementAndGet());
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    public JpaController<T> getController() {
+        return controller;
+    }
+
+    public CompletableFuture<T> create(T entity) {
+        return submit(Kind.CREATE, entity);
+    }
+
+    public CompletableFuture<T> update(T entity) {
+        return submit(Kind.UPDATE, entity);
+    }
+
+    /*
+     * commits what is queued without waiting for the group to fill up, completes once it is written
+     */
+    public CompletableFuture<T> flush() {
+        return submit(Kind.FLUSH, null);
+    }
+
+    private CompletableFuture<T> submit(Kind kind, T entity) {
+        if (kind != Kind.FLUSH && entity == null) {
+            throw new IllegalArgumentException("Entity must not be null.");
+        }
+        Submission<T> submission = new Submission<>(kind, entity);
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Write-behind writer is closed.");
+            }
+            queue.put(submission);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for room in the write-behind queue.", ex);
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        if (kind != Kind.FLUSH) {
+            submitted.incrementAndGet();
+        }
+        return submission.future;
+    }
+
+    private void run() {
+        List<Submission<T>> batch = new ArrayList<>(maxBatchSize);
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize && !isFlush(batch.get(batch.size() - 1))) {
+                    Submission<T> next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException ex) {
+                log.warn("Write-behind writer interrupted, it only stops on close().");
+            }
+            running = !containsClose(batch);
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private boolean isFlush(Submission<T> submission) {
+        return submission.kind == Kind.FLUSH || submission.kind == Kind.CLOSE;
+    }
+
+    private boolean containsClose(List<Submission<T>> batch) {
+        for (Submission<T> submission : batch) {
+            if (submission.kind == Kind.CLOSE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * writes consecutive submissions of the same kind in one transaction
+     */
+    private void write(List<Submission<T>> batch) {
+        List<Submission<T>> group = new ArrayList<>(batch.size());
+        for (Submission<T> submission : batch) {
+            if (!group.isEmpty() && group.get(0).kind != submission.kind) {
+                writeGroup(group);
+                group.clear();
+            }
+            if (submission.kind == Kind.FLUSH || submission.kind == Kind.CLOSE) {
+                submission.future.complete(null);
+            } else {
+                group.add(submission);
+            }
+        }
+        writeGroup(group);
+    }
+
+    private void writeGroup(List<Submission<T>> group) {
+        if (group.isEmpty()) {
+            return;
+        }
+        List<T> entities = new ArrayList<>(group.size());
+        for (Submission<T> submission : group) {
+            entities.add(submission.entity);
+        }
+        List<BatchResult<T>> results;
+        try {
+            results = group.get(0).kind == Kind.CREATE ? controller.createAll(entities) : controller.updateAll(entities);
+        } catch (RuntimeException ex) {
+            results = Collections.singletonList(new BatchResult<>(0, 0, entities, ex));
+        }
+        commits.addAndGet(results.size());
+        for (BatchResult<T> result : results) {
+            List<Submission<T>> chunk = group.subList(result.getFirstIndex(), result.getFirstIndex() + result.getSize());
+            if (result.isSuccessful()) {
+                for (Submission<T> submission : chunk) {
+                    if (submission.scope != null) {
+                        submission.scope.written();
+                    }
+                    submission.future.complete(submission.entity);
+                }
+                written.addAndGet(chunk.size());
+            } else if (chunk.size() == 1) {
+                failed.incrementAndGet();
+                chunk.get(0).future.completeExceptionally(result.getException());
+            } else {
+                log.debug("Write-behind group of {} entities failed, writing them one by one: {}", chunk.size(), result.getException().getMessage());
+                for (Submission<T> submission : chunk) {
+                    writeGroup(Collections.singletonList(submission));
+                }
+            }
+        }
+    }
+
+    /*
+     * number of entities queued and not yet taken by the writer thread
+     */
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /*
+     * number of transactions the writer ran, including the ones that were rolled back
+     */
+    public long getCommitCount() {
+        return commits.get();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /*
+     * Stops taking entities and returns once everything queued before was written. Submissions blocked
+     * on a full queue when close is called are still accepted and written.
+     */
+    @Override
+    public void close() {
+        Submission<T> close = new Submission<>(Kind.CLOSE, null);
+        closeLock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        try {
+            queue.put(close);
+            worker.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the write-behind queue to be written.", ex);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "WriteBehindWriter [queued=" + queue.size() + ", submitted=" + submitted.get() + ", written=" + written.get() + ", failed=" + failed.get() + ", commits="
+                + commits.get() + "]";
+    }
+
+    private static class Submission<T> {
+        private final Kind kind;
+        private final T entity;
+        private final ReadYourWritesScope scope = ReadYourWritesScope.current();
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        Submission(Kind kind, T entity) {
+            this.kind = kind;
+            this.entity = entity;
+        }
+    }
+}
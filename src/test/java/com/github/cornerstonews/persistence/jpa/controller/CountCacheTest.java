@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class CountCacheTest {
+
+    private static EntityManagerFactory emfA;
+    private static EntityManagerFactory emfB;
+    private static TestEventController controllerA;
+    private static TestEventController controllerB;
+
+    private CountCache countCache;
+
+    /*
+     * the same entity in two persistence units, with 3 and 5 events
+     */
+    @BeforeAll
+    public static void createEvents() {
+        emfA = Persistence.createEntityManagerFactory("test",
+                Collections.singletonMap(PersistenceUnitProperties.JDBC_URL, "jdbc:h2:mem:counta;DB_CLOSE_DELAY=-1"));
+        emfB = Persistence.createEntityManagerFactory("test",
+                Collections.singletonMap(PersistenceUnitProperties.JDBC_URL, "jdbc:h2:mem:countb;DB_CLOSE_DELAY=-1"));
+        controllerA = new TestEventController(emfA);
+        controllerB = new TestEventController(emfB);
+        controllerA.createAll(events(3));
+        controllerB.createAll(events(5));
+    }
+
+    private static List<TestEvent> events(int count) {
+        List<TestEvent> events = new ArrayList<>();
+        for (long id = 1; id <= count; id++) {
+            events.add(new TestEvent(id, "event", new Timestamp(1700000000000L)));
+        }
+        return events;
+    }
+
+    @AfterAll
+    public static void closeEntityManagerFactories() {
+        emfA.close();
+        emfB.close();
+    }
+
+    @BeforeEach
+    public void shareCountCache() {
+        countCache = new CountCache(10, 1, TimeUnit.MINUTES);
+        controllerA.setCountCache(countCache);
+        controllerB.setCountCache(countCache);
+    }
+
+    @Test
+    public void sharedCacheKeepsCountsOfControllersApart() {
+        assertEquals(Long.valueOf(3), controllerA.getCount());
+        assertEquals(Long.valueOf(5), controllerB.getCount());
+        assertEquals(Long.valueOf(3), controllerA.getCount());
+        assertEquals(Long.valueOf(5), controllerB.getCount());
+        assertEquals(Long.valueOf(3), controllerA.findByCount(TestEvent_.category, "event"));
+        assertEquals(Long.valueOf(5), controllerB.findByCount(TestEvent_.category, "event"));
+
+        assertEquals(4, countCache.getSize());
+        assertEquals(2, countCache.getHitCount());
+    }
+
+    @Test
+    public void searchEntityCountsAreNotCachedByDefault() {
+        TestEvent searchEntity = new TestEvent(null, "event", null);
+        assertEquals(Long.valueOf(3), controllerA.findByCount(searchEntity));
+        assertEquals(Long.valueOf(3), controllerA.findByCount(searchEntity));
+
+        assertEquals(0, countCache.getSize());
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class FindByTest {
+
+    private static EntityManagerFactory emf;
+    private static TestEventController controller;
+
+    @BeforeAll
+    public static void createEvents() {
+        emf = Persistence.createEntityManagerFactory("test",
+                Collections.singletonMap(PersistenceUnitProperties.JDBC_URL, "jdbc:h2:mem:findby;DB_CLOSE_DELAY=-1"));
+        controller = new TestEventController(emf);
+        List<TestEvent> events = new ArrayList<>();
+        for (long id = 1; id <= 10; id++) {
+            events.add(new TestEvent(id, id % 2 == 0 ? "even" : "odd", new Timestamp(1700000000000L + id)));
+        }
+        controller.createAll(events);
+    }
+
+    @AfterAll
+    public static void closeEntityManagerFactory() {
+        emf.close();
+    }
+
+    @Test
+    public void valueOfTheAttributeType() {
+        assertEquals(1, controller.findBy(TestEvent_.id, 4L).size());
+        assertEquals(Long.valueOf(1), controller.findByCount(TestEvent_.id, 4L));
+    }
+
+    @Test
+    public void valueOfAnotherTypeIsStillAccepted() {
+        assertEquals(4L, controller.findBy(TestEvent_.id, 4).get(0).getId());
+        assertEquals(4L, controller.findBy(TestEvent_.id, "4").get(0).getId());
+        assertEquals(Long.valueOf(1), controller.findByCount(TestEvent_.id, 4));
+        assertEquals(Long.valueOf(1), controller.findByCount(TestEvent_.id, "4"));
+    }
+
+    @Test
+    public void ignoreCaseMatchesAnyCase() {
+        assertEquals(5, controller.findBy(TestEvent_.category, "EVEN", true, 0, 10, null, false).size());
+    }
+}
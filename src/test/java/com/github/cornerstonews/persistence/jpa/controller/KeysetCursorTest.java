@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class KeysetCursorTest {
+
+    private static final int ROWS = 20;
+
+    private static EntityManagerFactory emf;
+    private static TestEventController controller;
+    private static List<Long> idsByCreatedAt;
+
+    /*
+     * all rows fall in the same millisecond, ids descend while createdAt ascends
+     */
+    @BeforeAll
+    public static void createEvents() {
+        emf = Persistence.createEntityManagerFactory("test",
+                Collections.singletonMap(PersistenceUnitProperties.JDBC_URL, "jdbc:h2:mem:keyset;DB_CLOSE_DELAY=-1"));
+        controller = new TestEventController(emf);
+        List<TestEvent> events = new ArrayList<>();
+        idsByCreatedAt = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            Timestamp createdAt = new Timestamp(1700000000000L);
+            createdAt.setNanos(123000 + i * 1000);
+            long id = ROWS - i;
+            events.add(new TestEvent(id, "event", createdAt));
+            idsByCreatedAt.add(id);
+        }
+        controller.createAll(events);
+    }
+
+    @AfterAll
+    public static void closeEntityManagerFactory() {
+        emf.close();
+    }
+
+    @Test
+    public void timestampKeepsNanosThroughEncodeAndDecode() {
+        Timestamp timestamp = new Timestamp(1700000000000L);
+        timestamp.setNanos(123456789);
+        KeysetCursor cursor = KeysetCursor.decode(new KeysetCursor(timestamp, 7L).encode());
+        assertEquals(timestamp, KeysetCursor.convert(cursor.getOrderValue(), Timestamp.class));
+        assertEquals(7L, KeysetCursor.convert(cursor.getPrimaryKey(), Long.class));
+    }
+
+    @Test
+    public void pagingByTimestampAscendingHasNoDuplicatesOrGaps() {
+        assertEquals(idsByCreatedAt, pageToEnd(false));
+    }
+
+    @Test
+    public void pagingByTimestampDescendingHasNoDuplicatesOrGaps() {
+        List<Long> expected = new ArrayList<>(idsByCreatedAt);
+        Collections.reverse(expected);
+        assertEquals(expected, pageToEnd(true));
+    }
+
+    @Test
+    public void pagingDoesNotModifyTheSearchPredicates() {
+        TestEventController immutablePredicates = new TestEventController(emf) {
+            @Override
+            protected List<Predicate> getSearchPredicates(TestEvent entity, CriteriaBuilder cb, Root<TestEvent> root) {
+                return Collections.singletonList(cb.equal(root.get(TestEvent_.category), entity.getCategory()));
+            }
+        };
+        List<Long> ids = new ArrayList<>();
+        KeysetCursor cursor = null;
+        do {
+            KeysetPage<TestEvent> page = immutablePredicates.findByAfter(new TestEvent(null, "event", null), cursor, 3, "createdAt", false, false);
+            for (TestEvent event : page.getItems()) {
+                ids.add(event.getId());
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null && ids.size() <= ROWS);
+        assertEquals(idsByCreatedAt, ids);
+    }
+
+    private List<Long> pageToEnd(boolean desc) {
+        List<Long> ids = new ArrayList<>();
+        KeysetCursor cursor = null;
+        do {
+            KeysetPage<TestEvent> page = controller.getAfter(cursor == null ? null : KeysetCursor.decode(cursor.encode()), 3, "createdAt", desc);
+            for (TestEvent event : page.getItems()) {
+                ids.add(event.getId());
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null && ids.size() <= ROWS);
+        return ids;
+    }
+}
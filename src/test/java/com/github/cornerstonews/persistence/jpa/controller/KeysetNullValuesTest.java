@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class KeysetNullValuesTest {
+
+    private static EntityManagerFactory emf;
+    private static TestEventController controller;
+
+    /*
+     * ids 1 to 10, every third one without a category
+     */
+    @BeforeAll
+    public static void createEvents() {
+        emf = Persistence.createEntityManagerFactory("test",
+                Collections.singletonMap(PersistenceUnitProperties.JDBC_URL, "jdbc:h2:mem:keysetnull;DB_CLOSE_DELAY=-1"));
+        controller = new TestEventController(emf);
+        List<TestEvent> events = new ArrayList<>();
+        for (long id = 1; id <= 10; id++) {
+            events.add(new TestEvent(id, id % 3 == 0 ? null : "c" + (char) ('a' + (10 - id)), new Timestamp(1700000000000L)));
+        }
+        controller.createAll(events);
+    }
+
+    @AfterAll
+    public static void closeEntityManagerFactory() {
+        emf.close();
+    }
+
+    @Test
+    public void nullValuesFollowAscendingValues() {
+        assertEquals(Arrays.asList(10L, 8L, 7L, 5L, 4L, 2L, 1L, 3L, 6L, 9L), pageToEnd(false, 3));
+        assertEquals(Arrays.asList(10L, 8L, 7L, 5L, 4L, 2L, 1L, 3L, 6L, 9L), pageToEnd(false, 1));
+    }
+
+    @Test
+    public void nullValuesFollowDescendingValues() {
+        assertEquals(Arrays.asList(1L, 2L, 4L, 5L, 7L, 8L, 10L, 9L, 6L, 3L), pageToEnd(true, 3));
+        assertEquals(Arrays.asList(1L, 2L, 4L, 5L, 7L, 8L, 10L, 9L, 6L, 3L), pageToEnd(true, 7));
+    }
+
+    private List<Long> pageToEnd(boolean desc, int pageSize) {
+        List<Long> ids = new ArrayList<>();
+        KeysetCursor cursor = null;
+        do {
+            KeysetPage<TestEvent> page = controller.getAfter(cursor == null ? null : KeysetCursor.decode(cursor.encode()), pageSize, "category", desc);
+            for (TestEvent event : page.getItems()) {
+                ids.add(event.getId());
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null && ids.size() <= 10);
+        return ids;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class ScanTest {
+
+    private static final int ROWS = 30;
+
+    private static EntityManagerFactory emf;
+    private static TestEventController controller;
+
+    /*
+     * every third event has no priority
+     */
+    @BeforeAll
+    public static void createEvents() {
+        emf = Persistence.createEntityManagerFactory("test",
+                Collections.singletonMap(PersistenceUnitProperties.JDBC_URL, "jdbc:h2:mem:scan;DB_CLOSE_DELAY=-1"));
+        controller = new TestEventController(emf);
+        List<TestEvent> events = new ArrayList<>();
+        for (long id = 1; id <= ROWS; id++) {
+            TestEvent event = new TestEvent(id, "event", new Timestamp(1700000000000L));
+            event.setPriority(id % 3 == 0 ? null : (int) (id % 7));
+            events.add(event);
+        }
+        controller.createAll(events);
+    }
+
+    @AfterAll
+    public static void closeEntityManagerFactory() {
+        emf.close();
+    }
+
+    @Test
+    public void scanByNullableAttributeDeliversNullValues() {
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ScanProgress progress = controller.scan(TestEvent_.priority, 3, 2, new ScanProgress(), (TestEvent event) -> ids.add(event.getId()));
+
+        assertEquals(ROWS, ids.size());
+        assertEquals(ROWS, progress.getRows());
+        assertTrue(progress.isComplete());
+        ScanPartition last = progress.getPartitions().get(progress.getTotalPartitions() - 1);
+        assertTrue(last.isNullValues());
+        assertEquals(ROWS / 3, last.getRows());
+    }
+
+    @Test
+    public void nullValuesPartitionSurvivesEncodeAndDecode() {
+        ScanProgress progress = controller.scan(TestEvent_.priority, 3, 2, new ScanProgress(), (TestEvent event) -> {
+        });
+        String encoded = progress.encode();
+        ScanProgress decoded = ScanProgress.decode(encoded);
+
+        assertEquals(encoded, decoded.encode());
+        assertTrue(decoded.getPartitions().get(decoded.getTotalPartitions() - 1).isNullValues());
+        assertTrue(decoded.isComplete());
+    }
+
+    @Test
+    public void scanByIdHasNoNullValuesPartition() {
+        Set<Long> ids = new TreeSet<>();
+        ScanProgress progress = controller.scan(4, 1, (TestEvent event) -> ids.add(event.getId()));
+
+        assertEquals(ROWS, ids.size());
+        for (ScanPartition partition : progress.getPartitions()) {
+            assertFalse(partition.isNullValues());
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cornerstonews.persistence.jpa.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.SingularAttribute;
+
+public class TestEventController extends AbstractJpaController<TestEvent> {
+
+    public TestEventController(EntityManagerFactory emf) {
+        super(emf, TestEvent.class);
+    }
+
+    @Override
+    public Object getPrimaryKey(TestEvent entity) {
+        return entity.getId();
+    }
+
+    @Override
+    public Object convertToPrimaryKeyType(Object id) {
+        if (id == null || id instanceof Long) {
+            return id;
+        }
+        return Long.valueOf(id.toString());
+    }
+
+    @Override
+    protected SingularAttribute<TestEvent, ?> getValidOrDefaultOrderBy(String orderBy) {
+        if ("category".equals(orderBy)) {
+            return TestEvent_.category;
+        } else if ("createdAt".equals(orderBy)) {
+            return TestEvent_.createdAt;
+        }
+        return TestEvent_.id;
+    }
+
+    @Override
+    protected List<Predicate> getSearchPredicates(TestEvent entity, CriteriaBuilder cb, Root<TestEvent> root) {
+        List<Predicate> predicates = new ArrayList<>();
+        if (entity.getCategory() != null) {
+            predicates.add(cb.equal(root.get(TestEvent_.category), entity.getCategory()));
+        }
+        return predicates;
+    }
+}